@@ -0,0 +1,54 @@
+package com.example.android.earthquake;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Counts the objects the test thread allocates between {@link #start()} and {@link #stop()},
+ * with the allocation counters of the runtime. The benchmark library of the app only reports
+ * times, so the benchmarks count the allocations of their loops with this. Counting slows every
+ * allocation down, so it runs apart from the timed loops.
+ */
+final class Allocations {
+
+    // runs of an operation counted for its allocations
+    private static final int RUNS = 5;
+
+    /**
+     * the body of a benchmark loop
+     */
+    interface Operation {
+        void run() throws Exception;
+    }
+
+    private Allocations() {
+    }
+
+    static void start() {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+    }
+
+    // stop counting and get the number of objects allocated since start
+    static int stop() {
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    /**
+     * count the objects and bytes a run of the operation allocates and log them under the tag
+     */
+    static void log(String tag, String name, Operation operation) throws Exception {
+        // the first run may load classes and fill caches
+        operation.run();
+        start();
+        for (int run = 0; run < RUNS; ++run) {
+            operation.run();
+        }
+        long allocations = stop();
+        long bytes = Debug.getThreadAllocSize();
+        Log.i(tag, name + ": " + allocations / RUNS + " allocations, " + bytes / RUNS
+                + " bytes per run");
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.earthquake;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks binding a row of the list and checks that binding allocates nothing, the texts of
+ * a table are formatted before it is shown. Look for the BindBenchmark line in logcat for the
+ * allocations counted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BindBenchmark {
+
+    private static final String TAG = "BindBenchmark";
+    private static final int EVENTS = 1000;
+    private static final int BINDS = 10000;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private EarthquakeAdapter adapter;
+    private EarthquakeAdapter.ViewHolder holder;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(
+                InstrumentationRegistry.getInstrumentation().getTargetContext(), R.style.AppTheme);
+        EarthquakeTable earthquakes = GeoJsonFixtures.earthquakeTable(EVENTS);
+        earthquakes.format();
+        adapter = new EarthquakeAdapter(context, earthquakes);
+        holder = adapter.onCreateViewHolder(new FrameLayout(context), 0);
+    }
+
+    @Test
+    public void bind_allocatesNothing() {
+        // every row once so the views grew their buffers for the longest texts
+        for (int position = 0; position < EVENTS; ++position) {
+            adapter.onBindViewHolder(holder, position);
+        }
+        Allocations.start();
+        for (int i = 0; i < BINDS; ++i) {
+            adapter.onBindViewHolder(holder, i % EVENTS);
+        }
+        int allocations = Allocations.stop();
+        Log.i(TAG, BINDS + " binds: " + allocations + " allocations, "
+                + (double) allocations / BINDS + " per bind");
+        assertEquals(0, allocations);
+    }
+
+    @Test
+    public void bind() {
+        BenchmarkState state = benchmarkRule.getState();
+        int position = 0;
+        while (state.keepRunning()) {
+            adapter.onBindViewHolder(holder, position);
+            position = position == EVENTS - 1 ? 0 : position + 1;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.android.earthquake;
+
+import android.app.Application;
+
+import androidx.lifecycle.MutableLiveData;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the model filters a range held by the earthquakes it loaded instead of asking
+ * USGS again, against a local server standing in for USGS which remembers the requests it got.
+ * Only the requests of the ranges under test are counted, the background sync may make its own.
+ */
+public class CoveredRangeTest {
+
+    private static final int EVENTS = 500;
+    private static final long TIMEOUT = 10000;// milliseconds
+    // time given to a request which should not be made
+    private static final long QUIET = 500;// milliseconds
+
+    private Application application;
+    private File snapshot;
+    private LocalServer server;
+    private final List<String> paths = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        application = (Application) InstrumentationRegistry.getInstrumentation()
+                .getTargetContext().getApplicationContext();
+        String json = GeoJsonFixtures.featureCollection(EVENTS);
+        server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public LocalServer.Response answer(LocalServer.Request request) {
+                synchronized (paths) {
+                    paths.add(request.path);
+                }
+                return LocalServer.Response.ok(json)
+                        .header("Content-Type", "application/json")
+                        .header("Cache-Control", "no-store");
+            }
+        });
+        QueryUtils.setHttpLayer(server.httpLayer());
+        // the model starts from an empty database and without a snapshot
+        EarthquakeStore store = EarthquakeStore.getInstance(application);
+        store.onUpgrade(store.getWritableDatabase(), 0, 0);
+        snapshot = new File(application.getCacheDir(), "earthquakes.snapshot");
+        snapshot.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        QueryUtils.setHttpLayer(HttpLayer.PLATFORM);
+        server.close();
+    }
+
+    // get the number of requests made for the range
+    private int requests(int minMag, int maxMag) {
+        int requests = 0;
+        synchronized (paths) {
+            for (String path : paths) {
+                if (path.contains(EarthquakeSync.magnitudeParameters(minMag, maxMag))) {
+                    ++requests;
+                }
+            }
+        }
+        return requests;
+    }
+
+    @Test
+    public void coveredRange_makesNoRequest() throws Exception {
+        MyModel model = newModel();
+        load(model, 2, 6, "time");
+        // the snapshot is written once the loaded list was indexed
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (snapshot.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(snapshot.length() > 0);
+        assertEquals(1, requests(2, 6));
+
+        EarthquakeTable filtered = load(model, 3, 5, "magnitude").getValue();
+        // posted right away from the loaded earthquakes
+        assertNotNull(filtered);
+        assertTrue(filtered.size() > 0);
+        for (int row = 0; row < filtered.size(); ++row) {
+            assertTrue(filtered.getMagnitude(row) >= 3 && filtered.getMagnitude(row) <= 5);
+            if (row > 0) {
+                assertTrue(filtered.getMagnitude(row - 1) >= filtered.getMagnitude(row));
+            }
+        }
+        Thread.sleep(QUIET);
+        assertEquals(0, requests(3, 5));
+
+        // a range reaching beyond the loaded one is requested
+        load(model, 1, 6, "time");
+        deadline = System.currentTimeMillis() + TIMEOUT;
+        while (requests(1, 6) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, requests(1, 6));
+    }
+
+    private MyModel newModel() {
+        AtomicReference<MyModel> model = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                model.set(new MyModel(application));
+            }
+        });
+        return model.get();
+    }
+
+    // ask for the list of new preferences, like the activity does when they changed
+    private static MutableLiveData<EarthquakeTable> load(MyModel model, int minMag, int maxMag,
+                                                         String orderBy) {
+        AtomicReference<MutableLiveData<EarthquakeTable>> list = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                model.nullifyMutableLiveData();
+                list.set(model.getMutableLiveData(minMag, maxMag, orderBy));
+            }
+        });
+        return list.get();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.earthquake;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the wall clock time of fetching a wide range in one request and in slices with
+ * {@link SlicedFetch}, against a local server which answers like USGS after a delay growing with
+ * the number of events it searched. Run it and look for the FanOutSpeedupTest line in logcat.
+ * The debug build allows cleartext requests to the local server.
+ */
+public class FanOutSpeedupTest {
+
+    private static final String TAG = "FanOutSpeedupTest";
+    private static final int EVENTS = 20000;
+    private static final int RUNS = 3;
+    // time the server takes for any request and for every event in the range it searched
+    private static final long BASE_LATENCY = 200;// milliseconds
+    private static final long NANOS_PER_EVENT = 50000;
+
+    private EarthquakeTable earthquakes;
+    private LocalServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        earthquakes = GeoJsonFixtures.earthquakeTable(EVENTS);
+        server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public LocalServer.Response answer(LocalServer.Request request)
+                    throws InterruptedException {
+                return search(request);
+            }
+        });
+        url = server.url("/query?format=geojson");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void slicedFetch_isFasterWithTheSameEvents() {
+        // the fixture events are in descending time
+        long startTime = earthquakes.getDateTime(EVENTS - 1);
+        long endTime = earthquakes.getDateTime(0);
+        long single = Long.MAX_VALUE;
+        long sliced = Long.MAX_VALUE;
+        EarthquakeTable whole = null;
+        EarthquakeTable merged = null;
+        for (int run = 0; run < RUNS; ++run) {
+            long start = System.nanoTime();
+            whole = QueryUtils.fetchEarthquakeData(url
+                    + "&starttime=" + EarthquakeSync.formatTime(startTime)
+                    + "&endtime=" + EarthquakeSync.formatTime(endTime)
+                    + "&orderby=time&limit=" + EVENTS);
+            single = Math.min(single, System.nanoTime() - start);
+            start = System.nanoTime();
+            // every slice gets a share of the limit, twice the events leaves room for slices
+            // holding more than a quarter of them
+            merged = SlicedFetch.fetch(url, startTime, endTime, SlicedFetch.SLICES,
+                    "time", 2 * EVENTS, null);
+            sliced = Math.min(sliced, System.nanoTime() - start);
+        }
+        Log.i(TAG, EVENTS + " events: one request " + single / 1000000 + " ms, "
+                + SlicedFetch.SLICES + " slices " + sliced / 1000000 + " ms, speedup "
+                + String.format(Locale.US, "%.2f", (double) single / sliced));
+        assertNotNull(whole);
+        assertNotNull(merged);
+        assertEquals(EVENTS, whole.size());
+        assertEquals(whole.size(), merged.size());
+        for (int row = 0; row < whole.size(); ++row) {
+            assertEquals(whole.getId(row), merged.getId(row));
+        }
+        assertTrue(sliced < single);
+    }
+
+    /**
+     * answer one request with the events from its start time up to its end time in descending
+     * time, after the delay of searching them
+     */
+    private LocalServer.Response search(LocalServer.Request request)
+            throws InterruptedException {
+        long startTime = parseTime(request.parameter("starttime"));
+        long endTime = parseTime(request.parameter("endtime"));
+        int limit = Integer.parseInt(request.parameter("limit"));
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        int searched = 0;
+        int count = 0;
+        for (int row = 0; row < EVENTS; ++row) {
+            long time = earthquakes.getDateTime(row);
+            if (time < startTime || time > endTime) {
+                continue;
+            }
+            ++searched;
+            if (count < limit) {
+                if (count++ > 0) {
+                    json.append(',');
+                }
+                appendFeature(json, row);
+            }
+        }
+        json.append("]}");
+        Thread.sleep(BASE_LATENCY + searched * NANOS_PER_EVENT / 1000000);
+        return LocalServer.Response.ok(json.toString())
+                .header("Content-Type", "application/json");
+    }
+
+    private void appendFeature(StringBuilder json, int row) {
+        json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":")
+                .append(earthquakes.getMagnitude(row))
+                .append(",\"place\":\"").append(earthquakes.getLocation(row))
+                .append("\",\"time\":").append(earthquakes.getDateTime(row))
+                .append(",\"updated\":").append(earthquakes.getUpdated(row))
+                .append(",\"url\":\"").append(earthquakes.getUrl(row))
+                .append("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                .append(earthquakes.getLongitude(row)).append(',')
+                .append(earthquakes.getLatitude(row)).append(',')
+                .append(earthquakes.getDepth(row))
+                .append("]},\"id\":\"").append(earthquakes.getId(row)).append("\"}");
+    }
+
+    private static long parseTime(String time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(time).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Bad time " + time, e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.android.earthquake;
+
+import android.app.Application;
+
+import androidx.lifecycle.MutableLiveData;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the JSON requests and how their failures reach the screen, against a local server
+ * standing in for USGS which answers with the body it is given. A response over the size limit
+ * is dropped while it is read, and a response breaking off leaves the list shown before on the
+ * screen while the failure is reported.
+ */
+public class FetchFailureTest {
+
+    private static final int EVENTS = 1000;
+    // failed requests are made up to three times, a second and then two seconds apart
+    private static final long TIMEOUT = 30000;// milliseconds
+
+    private final AtomicReference<LocalServer.Response> answer = new AtomicReference<>();
+    private Application application;
+    private LocalServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        application = (Application) InstrumentationRegistry.getInstrumentation()
+                .getTargetContext().getApplicationContext();
+        server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public LocalServer.Response answer(LocalServer.Request request) {
+                return answer.get();
+            }
+        });
+        QueryUtils.setHttpLayer(server.httpLayer());
+        // the model starts from an empty database and without a snapshot
+        EarthquakeStore store = EarthquakeStore.getInstance(application);
+        store.onUpgrade(store.getWritableDatabase(), 0, 0);
+        new File(application.getCacheDir(), "earthquakes.snapshot").delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        QueryUtils.setHttpLayer(HttpLayer.PLATFORM);
+        server.close();
+    }
+
+    private static LocalServer.Response json(String body) {
+        return LocalServer.Response.ok(body)
+                .header("Content-Type", "application/json")
+                .header("Cache-Control", "no-store");
+    }
+
+    private static String url() {
+        return EarthquakeSync.QUERY_URL + "?format=geojson&minmagnitude=2&maxmagnitude=6&limit="
+                + EarthquakeSync.LIMIT;
+    }
+
+    @Test
+    public void jsonResponse_isParsed() {
+        answer.set(json(GeoJsonFixtures.featureCollection(EVENTS)));
+        FetchTask task = new FetchTask("2-6-time", 1, null);
+        EarthquakeTable earthquakes = QueryUtils.fetchEarthquakeData(url(), null, null, task);
+        assertNotNull(earthquakes);
+        assertEquals(EVENTS, earthquakes.size());
+        assertEquals("us" + (7000000 + EVENTS - 1), earthquakes.getId(EVENTS - 1));
+        assertEquals(FetchTask.FAILURE_NONE, task.getFailure());
+    }
+
+    @Test
+    public void largeJsonResponse_isCutOff() {
+        // one event followed by whitespace, which the parser skips, up to beyond the limit. It
+        // goes over the wire gzipped, so the limit also holds for the unpacked body
+        byte[] event = GeoJsonFixtures.featureCollection(1).getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[(int) QueryUtils.MAX_RESPONSE_BYTES + 2];
+        Arrays.fill(body, (byte) ' ');
+        System.arraycopy(event, 0, body, 0, event.length - 2);
+        body[body.length - 2] = ']';
+        body[body.length - 1] = '}';
+        answer.set(new LocalServer.Response(200, "OK", body)
+                .header("Content-Type", "application/json"));
+        FetchTask task = new FetchTask("2-6-time", 1, null);
+        assertNull(QueryUtils.fetchEarthquakeData(url(), null, null, task));
+        assertEquals(FetchTask.FAILURE_TOO_LARGE, task.getFailure());
+    }
+
+    @Test
+    public void brokenOffResponse_keepsTheBatchesShown() throws Exception {
+        answer.set(json(GeoJsonFixtures.featureCollection(EVENTS)).breakOff(0.5));
+        MyModel model = newModel();
+        MutableLiveData<EarthquakeTable> list = load(model);
+
+        assertEquals(FetchTask.FAILURE_NETWORK, awaitFailure(model));
+        EarthquakeTable shown = list.getValue();
+        assertNotNull(shown);
+        // the batches parsed before the response broke off
+        assertTrue(shown.size() > 0);
+        assertTrue(shown.size() < EVENTS);
+    }
+
+    @Test
+    public void failedRefresh_keepsTheSavedList() throws Exception {
+        // saved a while ago, so the model asks USGS again
+        long now = System.currentTimeMillis();
+        EarthquakeTable saved = new EarthquakeTable();
+        for (int i = 0; i < 10; ++i) {
+            saved.add("saved" + i, 3, "Place", now - 60000L * i, now - 60000L * i, "url");
+        }
+        EarthquakeStore.getInstance(application).replaceEarthquakes(2, 6,
+                EarthquakeSync.windowStart(now), saved, true,
+                now - 2 * EarthquakeSync.FRESHNESS);
+        answer.set(LocalServer.Response.status(503));
+        MyModel model = newModel();
+        MutableLiveData<EarthquakeTable> list = load(model);
+
+        assertEquals(FetchTask.FAILURE_SERVER, awaitFailure(model));
+        EarthquakeTable shown = list.getValue();
+        assertNotNull(shown);
+        assertEquals(saved.size(), shown.size());
+        for (int row = 0; row < saved.size(); ++row) {
+            assertEquals(saved.getId(row), shown.getId(row));
+        }
+    }
+
+    private MyModel newModel() {
+        AtomicReference<MyModel> model = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                model.set(new MyModel(application));
+            }
+        });
+        return model.get();
+    }
+
+    private static MutableLiveData<EarthquakeTable> load(MyModel model) {
+        AtomicReference<MutableLiveData<EarthquakeTable>> list = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                list.set(model.getMutableLiveData(2, 6, "time"));
+            }
+        });
+        return list.get();
+    }
+
+    // wait for the failure of the request, the lists posted before it were delivered by then
+    private static int awaitFailure(MyModel model) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (model.getFailure().getValue() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        Integer failure = model.getFailure().getValue();
+        assertNotNull(failure);
+        return failure;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks the helpers formatting the texts of a row, the texts of a table are formatted when
+ * it is shown while the offsets, regions and colors are set for every earthquake added. The
+ * allocations of a call are logged on the FormatBenchmark lines in logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FormatBenchmark {
+
+    private static final String TAG = "FormatBenchmark";
+    private static final long TIME = 1600000000000L;
+    private static final String LOCATION = "10 km NNE of Ridgecrest, CA";
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final EarthquakeFormatter formatter = new EarthquakeFormatter();
+    private EarthquakeTable table = new EarthquakeTable();
+    private double magnitude;
+
+    // time the operation, then count what a call of it allocates
+    private void measure(String name, Allocations.Operation operation) throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            operation.run();
+        }
+        Allocations.log(TAG, name, operation);
+    }
+
+    @Test
+    public void formatMagnitude() throws Exception {
+        measure("formatMagnitude", new Allocations.Operation() {
+            @Override
+            public void run() {
+                formatter.formatMagnitude(4.56);
+            }
+        });
+    }
+
+    @Test
+    public void formatDate() throws Exception {
+        measure("formatDate", new Allocations.Operation() {
+            @Override
+            public void run() {
+                formatter.formatDate(TIME);
+            }
+        });
+    }
+
+    @Test
+    public void formatTime() throws Exception {
+        measure("formatTime", new Allocations.Operation() {
+            @Override
+            public void run() {
+                formatter.formatTime(TIME);
+            }
+        });
+    }
+
+    @Test
+    public void offset() throws Exception {
+        measure("offset", new Allocations.Operation() {
+            @Override
+            public void run() {
+                EarthquakeFormatter.offset(LOCATION);
+            }
+        });
+    }
+
+    @Test
+    public void primaryLocation() throws Exception {
+        measure("primaryLocation", new Allocations.Operation() {
+            @Override
+            public void run() {
+                EarthquakeFormatter.primaryLocation(LOCATION);
+            }
+        });
+    }
+
+    @Test
+    public void colorIndex() throws Exception {
+        measure("colorIndex", new Allocations.Operation() {
+            @Override
+            public void run() {
+                EarthquakeFormatter.colorIndex(magnitude);
+                magnitude = magnitude > 11 ? 0 : magnitude + 0.7;
+            }
+        });
+    }
+
+    @Test
+    public void addRow() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        Allocations.Operation addRow = new Allocations.Operation() {
+            @Override
+            public void run() {
+                table.add("us7000000", 4.56, LOCATION, TIME, TIME,
+                        "https://earthquake.usgs.gov/earthquakes/eventpage/us7000000");
+            }
+        };
+        while (state.keepRunning()) {
+            if (table.size() == 10000) {
+                state.pauseTiming();
+                table = new EarthquakeTable();
+                state.resumeTiming();
+            }
+            addRow.run();
+        }
+        table = new EarthquakeTable();
+        Allocations.log(TAG, "addRow", addRow);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.earthquake;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Builds USGS style GeoJSON responses for the benchmarks, the events look like the ones of the
+ * real feed with a fixed seed so every run parses the same payload.
+ */
+public final class GeoJsonFixtures {
+
+    private static final String[] REGIONS = {"CA", "Alaska", "Nevada", "Hawaii", "Japan",
+            "Indonesia", "Chile", "Puerto Rico", "Tonga", "Papua New Guinea"};
+
+    private GeoJsonFixtures() {
+    }
+
+    /**
+     * a feature collection with the given number of events in descending time
+     */
+    public static String featureCollection(int count) {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder(count * 1000);
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":1600000000000,")
+                .append("\"count\":").append(count).append("},\"features\":[");
+        long time = 1600000000000L;
+        for (int i = 0; i < count; ++i) {
+            time -= random.nextInt(600000);
+            double magnitude = Math.round(random.nextDouble() * 80) / 10.0;
+            String place = place(random, i);
+            String id = "us" + (7000000 + i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Feature\",\"properties\":{")
+                    .append("\"mag\":").append(magnitude)
+                    .append(",\"place\":\"").append(place)
+                    .append("\",\"time\":").append(time)
+                    .append(",\"updated\":").append(time + 3600000)
+                    .append(",\"tz\":null,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/")
+                    .append(id).append("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=")
+                    .append(id).append("&format=geojson\",\"felt\":null,\"cdi\":null,\"mmi\":null,")
+                    .append("\"alert\":null,\"status\":\"reviewed\",\"tsunami\":0,\"sig\":")
+                    .append(random.nextInt(1000)).append(",\"net\":\"us\",\"code\":\"")
+                    .append(7000000 + i).append("\",\"ids\":\",").append(id)
+                    .append(",\",\"sources\":\",us,\",\"types\":\",origin,phase-data,\",\"nst\":null,")
+                    .append("\"dmin\":1.2,\"rms\":0.9,\"gap\":40,\"magType\":\"mb\",\"type\":\"earthquake\",")
+                    .append("\"title\":\"M ").append(magnitude).append(" - ").append(place)
+                    .append("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(String.format(Locale.US, "%.4f,%.4f,%.2f", random.nextDouble() * 360 - 180,
+                            random.nextDouble() * 180 - 90, random.nextDouble() * 600))
+                    .append("]},\"id\":\"").append(id).append("\"}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * a table with the given number of events in descending time, built without going through
+     * GeoJSON so large tables are quick to set up
+     */
+    public static EarthquakeTable earthquakeTable(int count) {
+        Random random = new Random(42);
+        EarthquakeTable earthquakes = new EarthquakeTable(count);
+        long time = 1600000000000L;
+        for (int i = 0; i < count; ++i) {
+            time -= random.nextInt(600000);
+            double magnitude = Math.round(random.nextDouble() * 80) / 10.0;
+            String id = "us" + (7000000 + i);
+            earthquakes.add(id, magnitude, place(random, i), time, time + 3600000,
+                    "https://earthquake.usgs.gov/earthquakes/eventpage/" + id,
+                    random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 600);
+        }
+        return earthquakes;
+    }
+
+    private static String place(Random random, int i) {
+        return (1 + random.nextInt(120)) + " km " + (random.nextBoolean() ? "NNE" : "SW")
+                + " of Place " + (i % 97) + ", " + REGIONS[random.nextInt(REGIONS.length)];
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks building the spatial grid over a list and answering radius and bounding box queries
+ * from it, the queries should take well below a millisecond for tens of thousands of events.
+ */
+@RunWith(Parameterized.class)
+public class GridBenchmark {
+
+    // Anchorage
+    private static final double LATITUDE = 61.2;
+    private static final double LONGITUDE = -149.9;
+
+    @Parameterized.Parameters(name = "events={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{10000}, {100000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int events;
+    private EarthquakeTable earthquakes;
+    private EarthquakeGrid grid;
+
+    public GridBenchmark(int events) {
+        this.events = events;
+    }
+
+    @Before
+    public void setUp() {
+        earthquakes = GeoJsonFixtures.earthquakeTable(events);
+        grid = new EarthquakeGrid(earthquakes);
+    }
+
+    @Test
+    public void buildGrid() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            new EarthquakeGrid(earthquakes);
+        }
+    }
+
+    @Test
+    public void withinRadius() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertTrue(grid.withinRadius(LATITUDE, LONGITUDE, 1000).size() > 0);
+        }
+    }
+
+    @Test
+    public void boundingBox() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertTrue(grid.boundingBox(LATITUDE - 10, LATITUDE + 10, LONGITUDE - 20,
+                    LONGITUDE + 20).size() > 0);
+        }
+    }
+
+    @Test
+    public void boundingBoxAcrossTheAntimeridian() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertTrue(grid.boundingBox(-30, 30, 170, -170).size() > 0);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.android.earthquake;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the heap of 20000 parsed events in the table layout and in the layout it had before
+ * the locations were split and pooled and the urls dropped, and the heap of tables against
+ * lists of Earthquake objects holding the same events. The peak heap of
+ * parsing a response is sampled while it runs, for the streaming parse and the tree based one
+ * it replaced. Run it and look for the HeapUsageTest lines in logcat.
+ */
+public class HeapUsageTest {
+
+    private static final String TAG = "HeapUsageTest";
+    private static final int EVENTS = 20000;
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            runtime.gc();
+            runtime.runFinalization();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * run the parse and get the most heap in use above the start while it ran, sampled every
+     * millisecond on another thread
+     */
+    private static long peakHeap(Allocations.Operation parse) throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        long start = usedHeap();
+        AtomicLong peak = new AtomicLong(start);
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long used = runtime.totalMemory() - runtime.freeMemory();
+                    if (used > peak.get()) {
+                        peak.set(used);
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        sampler.start();
+        try {
+            parse.run();
+        } finally {
+            sampler.interrupt();
+            sampler.join();
+        }
+        return peak.get() - start;
+    }
+
+    @Test
+    public void streamingParse_hasALowerPeakHeap() throws Exception {
+        byte[] bytes = GeoJsonFixtures.featureCollection(EVENTS).getBytes(StandardCharsets.UTF_8);
+        long tree = peakHeap(new Allocations.Operation() {
+            @Override
+            public void run() throws IOException {
+                String response = QueryUtils.readFromStream(new ByteArrayInputStream(bytes));
+                assertEquals(EVENTS, QueryUtils.extractFeaturesFromJson(response).size());
+            }
+        });
+        long streaming = peakHeap(new Allocations.Operation() {
+            @Override
+            public void run() throws IOException {
+                assertEquals(EVENTS, QueryUtils.readFeaturesFromStream(
+                        new ByteArrayInputStream(bytes), null, null).size());
+            }
+        });
+        Log.i(TAG, EVENTS + " events: peak heap of the tree based parse " + tree / 1024
+                + " KB, of the streaming parse " + streaming / 1024 + " KB");
+        assertTrue(streaming < tree);
+    }
+
+    /**
+     * a table in the layout EarthquakeTable had before its locations were split and pooled, with
+     * the whole location, its offset, its primary location and the url kept for every row
+     */
+    private static final class UnpooledTable {
+        final String[] ids;
+        final double[] magnitudes;
+        final String[] locations;
+        final long[] dateTimes;
+        final long[] updated;
+        final String[] urls;
+        final double[] longitudes;
+        final double[] latitudes;
+        final double[] depths;
+        final String[] magnitudeTexts;
+        final String[] offsets;
+        final String[] primaryLocations;
+        final String[] dates;
+        final String[] times;
+        final byte[] colorIndexes;
+
+        UnpooledTable(ArrayList<Earthquake> earthquakes) {
+            int size = earthquakes.size();
+            ids = new String[size];
+            magnitudes = new double[size];
+            locations = new String[size];
+            dateTimes = new long[size];
+            updated = new long[size];
+            urls = new String[size];
+            longitudes = new double[size];
+            latitudes = new double[size];
+            depths = new double[size];
+            magnitudeTexts = new String[size];
+            offsets = new String[size];
+            primaryLocations = new String[size];
+            dates = new String[size];
+            times = new String[size];
+            colorIndexes = new byte[size];
+            for (int row = 0; row < size; ++row) {
+                Earthquake earthquake = earthquakes.get(row);
+                ids[row] = earthquake.getId();
+                magnitudes[row] = earthquake.getMagnitude();
+                locations[row] = earthquake.getLocation();
+                dateTimes[row] = earthquake.getDateTime();
+                updated[row] = earthquake.getUpdated();
+                urls[row] = earthquake.getUrl();
+                longitudes[row] = earthquake.getLongitude();
+                latitudes[row] = earthquake.getLatitude();
+                depths[row] = earthquake.getDepth();
+                offsets[row] = EarthquakeFormatter.offset(locations[row]);
+                primaryLocations[row] = EarthquakeFormatter.primaryLocation(locations[row]);
+                colorIndexes[row] = (byte) EarthquakeFormatter.colorIndex(magnitudes[row]);
+            }
+        }
+    }
+
+    @Test
+    public void pooledStrings_takeLessHeap() throws InterruptedException {
+        String json = GeoJsonFixtures.featureCollection(EVENTS);
+        // both layouts are filled from the strings of a parse, which only they keep afterwards
+        long start = usedHeap();
+        ArrayList<Earthquake> parsed = QueryUtils.extractFeaturesFromJson(json);
+        UnpooledTable unpooled = new UnpooledTable(parsed);
+        parsed = null;
+        long unpooledHeap = usedHeap() - start;
+
+        start = usedHeap();
+        parsed = QueryUtils.extractFeaturesFromJson(json);
+        EarthquakeTable pooled = new EarthquakeTable(parsed.size());
+        for (Earthquake earthquake : parsed) {
+            pooled.add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                    earthquake.getDateTime(), earthquake.getUpdated(), earthquake.getUrl(),
+                    earthquake.getLongitude(), earthquake.getLatitude(), earthquake.getDepth());
+        }
+        parsed = null;
+        long pooledHeap = usedHeap() - start;
+
+        Log.i(TAG, EVENTS + " events: unpooled layout " + unpooledHeap / 1024
+                + " KB, pooled layout " + pooledHeap / 1024 + " KB, "
+                + (unpooledHeap - pooledHeap) * 100 / unpooledHeap + "% less heap");
+        // the tables stay reachable until they were measured
+        assertEquals(EVENTS, unpooled.ids.length);
+        assertEquals(EVENTS, pooled.size());
+        assertTrue(pooledHeap < unpooledHeap);
+    }
+
+    @Test
+    public void table_takesLessHeapThanObjects() throws InterruptedException {
+        for (int events : new int[]{3000, 100000}) {
+            long start = usedHeap();
+            EarthquakeTable earthquakes = GeoJsonFixtures.earthquakeTable(events);
+            long table = usedHeap() - start;
+            // the texts of a shown table
+            earthquakes.format();
+            long shown = usedHeap() - start;
+            // one object per event with its boxed time and its own strings, like the list the
+            // parser gave before the table
+            long before = usedHeap();
+            ArrayList<Earthquake> list = new ArrayList<>();
+            for (int row = 0; row < events; ++row) {
+                list.add(new Earthquake(new String(earthquakes.getId(row)),
+                        earthquakes.getMagnitude(row), earthquakes.getLocation(row),
+                        Long.valueOf(earthquakes.getDateTime(row)), earthquakes.getUpdated(row),
+                        earthquakes.getUrl(row), earthquakes.getLongitude(row),
+                        earthquakes.getLatitude(row), earthquakes.getDepth(row)));
+            }
+            long objects = usedHeap() - before;
+            Log.i(TAG, events + " events: table " + table / 1024 + " KB, "
+                    + shown / 1024 + " KB once formatted, ArrayList<Earthquake> "
+                    + objects / 1024 + " KB");
+            assertEquals(events, list.size());
+            assertTrue(table < objects);
+        }
+    }
+}
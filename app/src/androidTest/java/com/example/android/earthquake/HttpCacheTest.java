@@ -0,0 +1,101 @@
+package com.example.android.earthquake;
+
+import android.net.http.HttpResponseCache;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the HTTP cache against a local server standing in for USGS, which answers with an ETag
+ * and asks for every response to be revalidated. A refresh of the same range is answered with
+ * 304 Not Modified and read from the cache, and both requests share one gzipped connection.
+ * Run it and look for the HttpCacheTest line in logcat for the bytes on the wire.
+ */
+public class HttpCacheTest {
+
+    private static final String TAG = "HttpCacheTest";
+    private static final int EVENTS = 1000;
+    private static final String ETAG = "\"fixture-1\"";
+
+    private final String json = GeoJsonFixtures.featureCollection(EVENTS);
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger gzipRequests = new AtomicInteger();
+    private LocalServer server;
+    private HttpResponseCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public LocalServer.Response answer(LocalServer.Request request) {
+                String encoding = request.header("Accept-Encoding");
+                if (encoding != null && encoding.contains("gzip")) {
+                    gzipRequests.incrementAndGet();
+                }
+                if (ETAG.equals(request.header("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    return new LocalServer.Response(304, "Not Modified", null)
+                            .header("ETag", ETAG);
+                }
+                return LocalServer.Response.ok(json)
+                        .header("Content-Type", "application/json")
+                        .header("ETag", ETAG)
+                        .header("Cache-Control", "no-cache");
+            }
+        });
+        File cacheDir = new File(InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getCacheDir(), "http-test");
+        cache = HttpResponseCache.install(cacheDir, 10 * 1024 * 1024);
+        QueryUtils.setHttpLayer(server.httpLayer());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        QueryUtils.setHttpLayer(HttpLayer.PLATFORM);
+        cache.delete();
+        server.close();
+    }
+
+    @Test
+    public void refreshOfTheSameRange_isRevalidated() {
+        // a refresh later the same day asks for the same url
+        long now = System.currentTimeMillis();
+        String url = EarthquakeSync.QUERY_URL + "?format=geojson&"
+                + EarthquakeSync.rangeParameters(2, 6, EarthquakeSync.windowStart(now))
+                + "&limit=" + EarthquakeSync.LIMIT + "&orderby=time";
+        int hits = cache.getHitCount();
+        EarthquakeTable first = QueryUtils.fetchEarthquakeData(url);
+        long firstBytes = server.getBytesWritten();
+        EarthquakeTable second = QueryUtils.fetchEarthquakeData(url);
+        long secondBytes = server.getBytesWritten() - firstBytes;
+        int jsonBytes = json.getBytes(StandardCharsets.UTF_8).length;
+        Log.i(TAG, "json " + jsonBytes / 1024 + " KB, first request " + firstBytes / 1024
+                + " KB on the wire, refresh " + secondBytes + " bytes, cache hits "
+                + (cache.getHitCount() - hits) + ", connections " + server.getConnections());
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(EVENTS, first.size());
+        assertEquals(EVENTS, second.size());
+        assertEquals(first.getId(EVENTS - 1), second.getId(EVENTS - 1));
+        // the refresh was revalidated and its body read from the cache
+        assertEquals(2, server.getRequests());
+        assertEquals(1, notModified.get());
+        assertEquals(hits + 1, cache.getHitCount());
+        assertTrue(secondBytes * 100 < firstBytes);
+        // the body went over the wire gzipped, and the connection was kept alive
+        assertEquals(2, gzipRequests.get());
+        assertTrue(firstBytes < jsonBytes / 2);
+        assertEquals(1, server.getConnections());
+    }
+}
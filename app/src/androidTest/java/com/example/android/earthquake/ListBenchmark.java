@@ -0,0 +1,89 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Benchmarks sorting and filtering the loaded earthquakes, building the index over a response
+ * and answering a narrower magnitude range from it. The allocations of a run are logged on the
+ * ListBenchmark lines in logcat.
+ */
+@RunWith(Parameterized.class)
+public class ListBenchmark {
+
+    private static final String TAG = "ListBenchmark";
+
+    @Parameterized.Parameters(name = "events={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{100}, {3000}, {20000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int events;
+    private EarthquakeTable earthquakes;
+    private EarthquakeIndex index;
+
+    public ListBenchmark(int events) {
+        this.events = events;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        byte[] bytes = GeoJsonFixtures.featureCollection(events).getBytes(StandardCharsets.UTF_8);
+        earthquakes = QueryUtils.readFeaturesFromStream(new ByteArrayInputStream(bytes), null, null);
+        index = new EarthquakeIndex(0, 10, earthquakes, true, 0);
+    }
+
+    // time the operation, then count what a run of it allocates
+    private void measure(String name, Allocations.Operation operation) throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            operation.run();
+        }
+        Allocations.log(TAG, name + "[events=" + events + "]", operation);
+    }
+
+    @Test
+    public void buildIndex() throws Exception {
+        measure("buildIndex", new Allocations.Operation() {
+            @Override
+            public void run() {
+                new EarthquakeIndex(0, 10, earthquakes, true, 0);
+            }
+        });
+    }
+
+    @Test
+    public void filterByTime() throws Exception {
+        measure("filterByTime", new Allocations.Operation() {
+            @Override
+            public void run() {
+                index.query(3, 6, "time");
+            }
+        });
+    }
+
+    @Test
+    public void filterByMagnitude() throws Exception {
+        measure("filterByMagnitude", new Allocations.Operation() {
+            @Override
+            public void run() {
+                index.query(3, 6, "magnitude-asc");
+            }
+        });
+    }
+}
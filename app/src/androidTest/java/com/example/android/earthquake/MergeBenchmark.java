@@ -0,0 +1,61 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks keeping 100000 events unique by id, building the set and merging a feed of a few
+ * hundred new and revised events into it.
+ */
+public class MergeBenchmark {
+
+    private static final int EVENTS = 100000;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private EarthquakeTable earthquakes;
+    private EarthquakeTable feed;
+
+    @Before
+    public void setUp() {
+        earthquakes = GeoJsonFixtures.earthquakeTable(EVENTS);
+        // revisions of the newest events and events newer than all of them
+        feed = new EarthquakeTable();
+        for (int row = 0; row < 200; ++row) {
+            feed.add(earthquakes.getId(row), earthquakes.getMagnitude(row) + 0.1,
+                    earthquakes.getLocation(row), earthquakes.getDateTime(row),
+                    earthquakes.getUpdated(row) + 1, earthquakes.getUrl(row));
+            feed.add("new" + row, 3, "Place", earthquakes.getDateTime(0) + row,
+                    earthquakes.getDateTime(0) + row, "url");
+        }
+    }
+
+    @Test
+    public void buildSet() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertEquals(EVENTS, new EarthquakeSet(earthquakes).size());
+        }
+    }
+
+    @Test
+    public void mergeFeed() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            EarthquakeSet set = new EarthquakeSet(earthquakes);
+            state.resumeTiming();
+            EarthquakeSet.ChangeSet changes = set.merge(feed, Collections.<String>emptyList());
+            assertEquals(200, changes.getUpdated().size());
+        }
+    }
+}
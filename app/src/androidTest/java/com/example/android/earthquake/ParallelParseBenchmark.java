@@ -0,0 +1,80 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks the parallel parse of {@link QueryUtils#extractFeaturesFromJson(String)} with pools
+ * of 1 to 8 threads, comparing the times for one payload size shows how the parse scales with
+ * the number of cores. Only the offline tree based parse runs in parallel, the app streams its
+ * responses with {@link QueryUtils#readFeaturesFromStream}, timed by {@link ParseBenchmark}.
+ */
+@RunWith(Parameterized.class)
+public class ParallelParseBenchmark {
+
+    @Parameterized.Parameters(name = "events={0},threads={1}")
+    public static Collection<Object[]> parameters() {
+        ArrayList<Object[]> parameters = new ArrayList<>();
+        for (int events : new int[]{3000, 20000}) {
+            for (int threads : new int[]{1, 2, 4, 8}) {
+                parameters.add(new Object[]{events, threads});
+            }
+        }
+        return parameters;
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int events;
+    private final int threads;
+    private String json;
+    private ForkJoinPool pool;
+
+    public ParallelParseBenchmark(int events, int threads) {
+        this.events = events;
+        this.threads = threads;
+    }
+
+    @Before
+    public void setUp() {
+        json = GeoJsonFixtures.featureCollection(events);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void extractFeaturesFromJson() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            ArrayList<Earthquake> earthquakes = QueryUtils.extractFeaturesFromJson(json, pool);
+            assertEquals(events, earthquakes.size());
+        }
+    }
+
+    @Test
+    public void parallelParse_keepsOrder() {
+        ArrayList<Earthquake> earthquakes = QueryUtils.extractFeaturesFromJson(json, pool);
+        assertEquals(events, earthquakes.size());
+        for (int i = 0; i < earthquakes.size(); ++i) {
+            assertEquals("us" + (7000000 + i), earthquakes.get(i).getId());
+        }
+    }
+}
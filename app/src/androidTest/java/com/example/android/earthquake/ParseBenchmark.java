@@ -0,0 +1,106 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks reading and parsing responses of 100, 3000 and 20000 events, the tree based
+ * parse is measured next to the streaming one the app uses. The allocations of a run are
+ * logged on the ParseBenchmark lines in logcat.
+ */
+@RunWith(Parameterized.class)
+public class ParseBenchmark {
+
+    private static final String TAG = "ParseBenchmark";
+
+    @Parameterized.Parameters(name = "events={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{100}, {3000}, {20000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int events;
+    private String json;
+    private byte[] bytes;
+
+    public ParseBenchmark(int events) {
+        this.events = events;
+    }
+
+    @Before
+    public void setUp() {
+        json = GeoJsonFixtures.featureCollection(events);
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // time the operation, then count what a run of it allocates
+    private void measure(String name, Allocations.Operation operation) throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            operation.run();
+        }
+        Allocations.log(TAG, name + "[events=" + events + "]", operation);
+    }
+
+    @Test
+    public void readFromStream() throws Exception {
+        measure("readFromStream", new Allocations.Operation() {
+            @Override
+            public void run() throws IOException {
+                String response = QueryUtils.readFromStream(new ByteArrayInputStream(bytes));
+                assertEquals(json.length(), response.length());
+            }
+        });
+    }
+
+    @Test
+    public void extractFeaturesFromJson() throws Exception {
+        measure("extractFeaturesFromJson", new Allocations.Operation() {
+            @Override
+            public void run() {
+                ArrayList<Earthquake> earthquakes = QueryUtils.extractFeaturesFromJson(json);
+                assertEquals(events, earthquakes.size());
+            }
+        });
+    }
+
+    @Test
+    public void readAndExtract() throws Exception {
+        measure("readAndExtract", new Allocations.Operation() {
+            @Override
+            public void run() throws IOException {
+                String response = QueryUtils.readFromStream(new ByteArrayInputStream(bytes));
+                assertEquals(events, QueryUtils.extractFeaturesFromJson(response).size());
+            }
+        });
+    }
+
+    @Test
+    public void readFeaturesFromStream() throws Exception {
+        measure("readFeaturesFromStream", new Allocations.Operation() {
+            @Override
+            public void run() throws IOException {
+                EarthquakeTable earthquakes = QueryUtils.readFeaturesFromStream(
+                        new ByteArrayInputStream(bytes), null, null);
+                assertEquals(events, earthquakes.size());
+            }
+        });
+    }
+}
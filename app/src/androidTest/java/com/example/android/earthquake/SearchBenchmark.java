@@ -0,0 +1,77 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks building the place index of a list and searching it, a search runs after every
+ * pause in typing so it has to stay well below a frame even for the largest lists.
+ */
+@RunWith(Parameterized.class)
+public class SearchBenchmark {
+
+    @Parameterized.Parameters(name = "events={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{3000}, {100000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int events;
+    private EarthquakeTable earthquakes;
+    private PlaceIndex index;
+
+    public SearchBenchmark(int events) {
+        this.events = events;
+    }
+
+    @Before
+    public void setUp() {
+        earthquakes = GeoJsonFixtures.earthquakeTable(events);
+        index = new PlaceIndex(earthquakes);
+    }
+
+    @Test
+    public void buildIndex() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            new PlaceIndex(earthquakes);
+        }
+    }
+
+    @Test
+    public void searchWord() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertTrue(index.search("alaska").length > 0);
+        }
+    }
+
+    @Test
+    public void searchPrefixes() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertTrue(index.search("pap n").length > 0);
+        }
+    }
+
+    @Test
+    public void filter() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertTrue(index.filter("place 1").size() > 0);
+        }
+    }
+}
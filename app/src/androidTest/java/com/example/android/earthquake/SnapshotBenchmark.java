@@ -0,0 +1,90 @@
+package com.example.android.earthquake;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks loading the snapshot written after a fetch against parsing the same events from
+ * GeoJSON again, which is what a cold start did before.
+ */
+@RunWith(Parameterized.class)
+public class SnapshotBenchmark {
+
+    private static final String KEY = "2-6-time";
+
+    @Parameterized.Parameters(name = "events={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{100}, {3000}, {20000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int events;
+    private byte[] bytes;
+    private File file;
+
+    public SnapshotBenchmark(int events) {
+        this.events = events;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        bytes = GeoJsonFixtures.featureCollection(events).getBytes(StandardCharsets.UTF_8);
+        EarthquakeTable earthquakes =
+                QueryUtils.readFeaturesFromStream(new ByteArrayInputStream(bytes), null, null);
+        file = new File(InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getCacheDir(), "benchmark.snapshot");
+        assertTrue(EarthquakeSnapshot.write(file, KEY, earthquakes));
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void readSnapshot() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertEquals(events, EarthquakeSnapshot.read(file, KEY).size());
+        }
+    }
+
+    @Test
+    public void parseGeoJson() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            EarthquakeTable earthquakes =
+                    QueryUtils.readFeaturesFromStream(new ByteArrayInputStream(bytes), null, null);
+            assertEquals(events, earthquakes.size());
+        }
+    }
+
+    @Test
+    public void writeSnapshot() throws IOException {
+        EarthquakeTable earthquakes =
+                QueryUtils.readFeaturesFromStream(new ByteArrayInputStream(bytes), null, null);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertTrue(EarthquakeSnapshot.write(file, KEY, earthquakes));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.android.earthquake;
+
+/**
+ * interface for receiving earthquakes while the response is still being parsed
+ * QueryUtils calls onBatch with the table of all the earthquakes parsed so far, first after a
+ * small batch so the list can be shown quickly and then after every bigger batch. The table keeps
+ * growing on the background thread after the call returns, so only a snapshot of it may be
+ * handed to another thread
+ */
+
+public interface BatchListener {
+    void onBatch(EarthquakeTable earthquakes);
+}
@@ -2,17 +2,39 @@ package com.example.android.earthquake;
 
 public class Earthquake {
 
+    private final String mId;// USGS event id of the earthquake
     private final double mMagnitude;// magnitude of earthquake
     private final String mLocation;// location of earthquake
     private final Long mDateTime;// date and time in milliseconds
+    private final long mUpdated;// time in milliseconds when the event was last updated by USGS
     private final String mUrl; // url to view the additional details of the earthquake
+    private final double mLongitude;// longitude in degrees, NaN if unknown
+    private final double mLatitude;// latitude in degrees, NaN if unknown
+    private final double mDepth;// depth in km, NaN if unknown
 
     // constructor for initialising the earthquake information
-    public Earthquake(double magnitude,String location,Long dateTime,String url){
+    public Earthquake(String id,double magnitude,String location,Long dateTime,long updated,
+                      String url){
+        this(id,magnitude,location,dateTime,updated,url,Double.NaN,Double.NaN,Double.NaN);
+    }
+
+    // constructor for initialising the earthquake information together with its coordinates
+    public Earthquake(String id,double magnitude,String location,Long dateTime,long updated,
+                      String url,double longitude,double latitude,double depth){
+        mId = id;
         mMagnitude = magnitude;
         mLocation = location;
         mDateTime = dateTime;
+        mUpdated = updated;
         mUrl = url;
+        mLongitude = longitude;
+        mLatitude = latitude;
+        mDepth = depth;
+    }
+
+    // get the event id
+    public String getId(){
+        return mId;
     }
 
     // get the magnitude of earthquake
@@ -30,8 +52,28 @@ public class Earthquake {
         return mDateTime;
     }
 
+    // get the milliseconds of the last update
+    public long getUpdated() {
+        return mUpdated;
+    }
+
     // get the url
     public String getUrl() {
         return mUrl;
     }
+
+    // get the longitude in degrees
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    // get the latitude in degrees
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    // get the depth in km
+    public double getDepth() {
+        return mDepth;
+    }
 }
@@ -30,18 +30,29 @@ import android.view.View;
 import android.widget.PopupMenu;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
 
-import java.util.ArrayList;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class EarthquakeActivity extends AppCompatActivity{
     private static final String LOG_TAG = "MainActivity";
+    // a network which comes and goes only triggers one retry once it stayed up this long
+    private static final long NETWORK_SETTLE_DELAY = 2000;// milliseconds
+    private static final long MAX_RETRY_DELAY = 60000;// milliseconds
+    // the summary counts the earthquakes of this magnitude band and above as strong
+    private static final int STRONG_BAND = EarthquakeFormatter.colorIndex(5.1);
     private MyModel mMyModel;
     private ViewModelProvider mViewModelProvider;
     private RecyclerView mRecyclerView;
     private TextView mEmptyView;
+    private TextView mSummaryView;
+    // formats the date of the busiest day in the summary
+    private final EarthquakeFormatter mFormatter = new EarthquakeFormatter();
     private EarthquakeAdapter mEarthquakeAdapter;
     private ProgressBar mProgressBar;
     private ConnectivityManager mConnectivityManager;
@@ -51,6 +62,45 @@ public class EarthquakeActivity extends AppCompatActivity{
     private Handler mHandler;
     private SharedPreferences sharedPreferences;
     private Toolbar mToolbar;
+    // doubles with every retry which still finds no earthquakes
+    private long mRetryDelay = NETWORK_SETTLE_DELAY;
+    // why the last request failed, tells the empty view what to say
+    private int mFailure = FetchTask.FAILURE_NONE;
+
+    /**
+     * load again if the last load came back empty, observing the same live data again would
+     * only show the same list
+     */
+    private final Runnable mRetry = new Runnable() {
+        @Override
+        public void run() {
+            if(mEmptyView.getVisibility() != View.VISIBLE) {
+                return;
+            }
+            mRetryDelay = Math.min(mRetryDelay * 2,MAX_RETRY_DELAY);
+            mMyModel.getEarthquakes().removeObservers(EarthquakeActivity.this);
+            mMyModel.getPager().removeObservers(EarthquakeActivity.this);
+            mMyModel.nullifyMutableLiveData();
+            mEmptyView.setVisibility(View.GONE);
+            mProgressBar.setVisibility(View.VISIBLE);
+            fetchData();
+        }
+    };
+
+    private final ConnectivityManager.NetworkCallback mNetworkCallback =
+            new ConnectivityManager.NetworkCallback(){
+        @Override
+        public void onAvailable(Network network) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // merge the events of a flapping network into one retry
+                    mHandler.removeCallbacks(mRetry);
+                    mHandler.postDelayed(mRetry,mRetryDelay);
+                }
+            });
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -67,6 +117,7 @@ public class EarthquakeActivity extends AppCompatActivity{
         maxMag = -1;
         orderBy = "random";// random string to trigger fetching of data on creation of activity
         mEmptyView = findViewById(R.id.empty_view);
+        mSummaryView = findViewById(R.id.summary_view);
         // get the progress bar to indicate loading
         mProgressBar = findViewById(R.id.loading_bar);
         // set a view model provider for the current activity
@@ -75,27 +126,133 @@ public class EarthquakeActivity extends AppCompatActivity{
         mMyModel = mViewModelProvider.get(MyModel.class);
         // find a reference to the RecyclerView in the layout
         mRecyclerView = findViewById(R.id.earthquakes);
+        // set the layout manager to position the items
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(EarthquakeActivity.this));
+        // create the adapter once, every new list of earthquakes is submitted to it
+        mEarthquakeAdapter = new EarthquakeAdapter(EarthquakeActivity.this, new EarthquakeTable());
+        // click listener for when an item is clicked
+        mEarthquakeAdapter.setClickListener((view, position) -> {
+            String url = mEarthquakeAdapter.getUrl(position);
+            // null while the page of the row is loading
+            if(url != null) {
+                searchWeb(url);
+            }
+        });
+        // attach the adapter to the recyclerView to populate the items
+        mRecyclerView.setAdapter(mEarthquakeAdapter);
         mHandler = new Handler(Looper.getMainLooper());
         mConnectivityManager = getSystemService(ConnectivityManager.class);
-        mConnectivityManager.registerDefaultNetworkCallback(
-                new ConnectivityManager.NetworkCallback(){
+        mConnectivityManager.registerDefaultNetworkCallback(mNetworkCallback);
+        // a failed refresh keeps the list shown before, so the user is told with a toast
+        mMyModel.getFailure().observe(EarthquakeActivity.this,new Observer<Integer>() {
             @Override
-            public void onAvailable(Network network) {
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        mEmptyView.setVisibility(View.GONE);
-                        mProgressBar.setVisibility(View.VISIBLE);
-                        fetchData();
-                    }
-                });
+            public void onChanged(Integer failure) {
+                if(failure == null || failure == FetchTask.FAILURE_NONE) {
+                    return;
+                }
+                mFailure = failure;
+                if(mRecyclerView.getVisibility() == View.VISIBLE) {
+                    Toast.makeText(EarthquakeActivity.this,R.string.refresh_failed,
+                            Toast.LENGTH_LONG).show();
+                }
+                mMyModel.clearFailure();
+            }
+        });
+        mMyModel.getSummary().observe(EarthquakeActivity.this,new Observer<EarthquakeHistogram>() {
+            @Override
+            public void onChanged(EarthquakeHistogram summary) {
+                showSummary(summary);
+            }
+        });
+        mMyModel.getSearchResults().observe(EarthquakeActivity.this,new Observer<EarthquakeTable>() {
+            @Override
+            public void onChanged(EarthquakeTable matches) {
+                showSearchResults(matches);
             }
         });
     }
 
+    /**
+     * show the earthquakes matching the search, or the whole list again once the search ended
+     */
+    private void showSearchResults(EarthquakeTable matches) {
+        if(matches == null) {
+            EarthquakeTable earthquakes = mMyModel.getEarthquakes() != null
+                    ? mMyModel.getEarthquakes().getValue() : null;
+            if(earthquakes != null) {
+                setUpRecyclerView(earthquakes);
+                EarthquakePager pager = mMyModel.getPager().getValue();
+                if(pager != null) {
+                    mEarthquakeAdapter.submitPager(pager);
+                }
+            }
+            return;
+        }
+        mProgressBar.setVisibility(View.GONE);
+        if(matches.size() == 0) {
+            mRecyclerView.setVisibility(View.GONE);
+            mEmptyView.setText(R.string.no_matches);
+            mEmptyView.setVisibility(View.VISIBLE);
+        }
+        else{
+            mRecyclerView.setVisibility(View.VISIBLE);
+            mEmptyView.setVisibility(View.GONE);
+            mEarthquakeAdapter.submitEarthquakes(matches);
+        }
+    }
+
+    /**
+     * show how many earthquakes the list holds, how many of them are strong and the day most of
+     * them happened on, the summary is hidden while there are none
+     */
+    private void showSummary(EarthquakeHistogram summary) {
+        if(summary == null || summary.getTotal() == 0) {
+            mSummaryView.setVisibility(View.GONE);
+            return;
+        }
+        int strong = 0;
+        for(int band = STRONG_BAND; band < EarthquakeHistogram.BANDS; ++band) {
+            strong += summary.getBandCount(band);
+        }
+        int busiest = summary.getBusiestBucket();
+        mSummaryView.setText(getString(R.string.summary,summary.getTotal(),strong,
+                mFormatter.formatDate(summary.getBucketStart(busiest)),
+                summary.getBucketCount(busiest)));
+        mSummaryView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * poll the live feed while the list is visible if live updates are switched on
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if(sharedPreferences.getBoolean(getString(R.string.liveUpdates),false)) {
+            mMyModel.startLive();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mMyModel.stopLive();
+    }
+
+    /**
+     * stop listening to the network, a callback left registered would keep the activity and
+     * retry for it after it is gone
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+        mHandler.removeCallbacks(mRetry);
+    }
+
     /**
      * checking if preferences were updated whenever activity is resumed, if yes
-     * make a new network request based on updated preferences
+     * load the earthquakes for the updated preferences, the model only makes a new network
+     * request if the earthquakes already loaded do not cover them
      */
 
     @Override
@@ -112,26 +269,26 @@ public class EarthquakeActivity extends AppCompatActivity{
             orderBy = tempOrderBy;
             // generate the parameter corresponding to the order chosen
             orderBy = findValue(orderBy);
+            // stop observing the earthquakes of the old preferences, the list stays on screen
+            // until the new ones arrive and only the rows which differ are updated
+            if(mMyModel.getEarthquakes() != null) {
+                mMyModel.getEarthquakes().removeObservers(this);
+                mMyModel.getPager().removeObservers(this);
+            }
             mMyModel.nullifyMutableLiveData();
-            mRecyclerView.setVisibility(View.GONE);
             init();
         }
     }
 
     /**
-     * check if internet connection is available to , if yes make an API call else
-     * tell the user about the missing internet connectivity
+     * load the earthquakes, the saved ones are shown even if there is no internet connection and
+     * the user is told about the missing connectivity only if nothing was saved
      */
 
     private void init() {
-        if(mConnectivityManager.getActiveNetwork() == null && mMyModel.getEarthquakes() == null) {
-            mEmptyView.setText(R.string.no_internet);
-            mEmptyView.setVisibility(View.VISIBLE);
-        }
-        else{
-            mProgressBar.setVisibility(View.VISIBLE);
-            fetchData();
-        }
+        mFailure = FetchTask.FAILURE_NONE;
+        mProgressBar.setVisibility(View.VISIBLE);
+        fetchData();
     }
 
     /**
@@ -140,12 +297,33 @@ public class EarthquakeActivity extends AppCompatActivity{
      */
     private void fetchData(){
         mMyModel.getMutableLiveData(minMag,maxMag,orderBy).observe(EarthquakeActivity.this,
-                new Observer<ArrayList<Earthquake>>() {
+                new Observer<EarthquakeTable>() {
                     @Override
-                    public void onChanged(ArrayList<Earthquake> earthquakes) {
+                    public void onChanged(EarthquakeTable earthquakes) {
                         setUpRecyclerView(earthquakes);
                     }
                 });
+        // set only when more earthquakes match than one request returns
+        mMyModel.getPager().observe(EarthquakeActivity.this,new Observer<EarthquakePager>() {
+            @Override
+            public void onChanged(EarthquakePager pager) {
+                // the pages are only shown while not searching
+                if(pager != null && !mMyModel.isSearching()) {
+                    mEarthquakeAdapter.submitPager(pager);
+                }
+            }
+        });
+    }
+
+    /**
+     * print the pipeline metrics, run adb shell dumpsys activity com.example.android.earthquake
+     */
+    @Override
+    public void dump(@NonNull String prefix, FileDescriptor fd, @NonNull PrintWriter writer,
+                     String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.print(PipelineMetrics.dump());
     }
 
     /**
@@ -155,34 +333,65 @@ public class EarthquakeActivity extends AppCompatActivity{
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
         inflater.inflate(R.menu.menu_main,menu);
+        menu.findItem(R.id.live).setChecked(
+                sharedPreferences.getBoolean(getString(R.string.liveUpdates),false));
+        MenuItem searchItem = menu.findItem(R.id.search);
+        SearchView searchView = (SearchView)searchItem.getActionView();
+        // places are searched by name and areas by coordinates
+        searchView.setQueryHint(getString(R.string.search_hint));
+        if(mMyModel.isSearching()) {
+            // the model kept the query when the activity was created again
+            searchItem.expandActionView();
+            searchView.setQuery(mMyModel.getQuery(),false);
+        }
+        // every key typed searches again, the model waits until typing pauses
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mMyModel.search(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                mMyModel.search(query);
+                return true;
+            }
+        });
         return true;
     }
 
     /**
      * setup the the recycler view with the list or tell the user if no matching earthquakes were
-     * found
+     * found, the adapter is kept and only updates the rows which changed
      */
 
-    private void setUpRecyclerView(ArrayList<Earthquake> earthquakes) {
+    private void setUpRecyclerView(EarthquakeTable earthquakes) {
         if(earthquakes == null || earthquakes.size() == 0) {
             mRecyclerView.setVisibility(View.GONE);
             mProgressBar.setVisibility(View.GONE);
-            mEmptyView.setText(R.string.no_data_available);
+            if(mConnectivityManager.getActiveNetwork() == null) {
+                mEmptyView.setText(R.string.no_internet);
+            }
+            else if(mFailure != FetchTask.FAILURE_NONE) {
+                mEmptyView.setText(R.string.load_failed);
+            }
+            else{
+                mEmptyView.setText(R.string.no_data_available);
+            }
             mEmptyView.setVisibility(View.VISIBLE);
         }
         else {
+            mRetryDelay = NETWORK_SETTLE_DELAY;
             mRecyclerView.setVisibility(View.VISIBLE);
             mEmptyView.setVisibility(View.GONE);
             mProgressBar.setVisibility(View.GONE);
-            // create adapter passing in the earthquake data
-            mEarthquakeAdapter = new EarthquakeAdapter(EarthquakeActivity.this, earthquakes);
-            // attach the adapter to the recyclerView to populate the items
-            mRecyclerView.setAdapter(mEarthquakeAdapter);
-            // set the layout manager to position the items
-            mRecyclerView.setLayoutManager(new LinearLayoutManager(EarthquakeActivity.this));
-            // click listener for when an item is clicked
-            mEarthquakeAdapter.setClickListener((view, position) ->
-                    searchWeb(earthquakes.get(position).getUrl()));
+            // while searching the matches of the new list are shown once its places are indexed
+            if(!mMyModel.isSearching()) {
+                // the adapter works out which rows changed
+                mEarthquakeAdapter.submitEarthquakes(earthquakes);
+            }
         }
     }
 
@@ -191,9 +400,24 @@ public class EarthquakeActivity extends AppCompatActivity{
      */
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
-        Intent intent = new Intent(EarthquakeActivity.this,SettingsActivity.class);
-        startActivity(intent);
-        return true;
+        if(item.getItemId() == R.id.settings) {
+            Intent intent = new Intent(EarthquakeActivity.this,SettingsActivity.class);
+            startActivity(intent);
+            return true;
+        }
+        if(item.getItemId() == R.id.live) {
+            boolean live = !item.isChecked();
+            item.setChecked(live);
+            sharedPreferences.edit().putBoolean(getString(R.string.liveUpdates),live).apply();
+            if(live) {
+                mMyModel.startLive();
+            }
+            else{
+                mMyModel.stopLive();
+            }
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
     }
 
     /**
@@ -8,15 +8,19 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.w3c.dom.Text;
 
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
 import android.graphics.drawable.GradientDrawable;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  *  Create the basic adapter extending from RecyclerView.Adapter
@@ -24,93 +28,135 @@ import android.graphics.drawable.GradientDrawable;
  */
 public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.ViewHolder> {
 
+    // colors of the magnitude circle, in the order of EarthquakeFormatter.colorIndex
+    private static final int[] MAGNITUDE_COLOR_IDS = {R.color.magnitude1, R.color.magnitude2,
+            R.color.magnitude3, R.color.magnitude4, R.color.magnitude5, R.color.magnitude6,
+            R.color.magnitude7, R.color.magnitude8, R.color.magnitude9, R.color.magnitude10plus};
+
+    // diffs of the tables are computed on this thread, not on the I/O threads where they would
+    // wait behind requests, it ends after a while without diffs and starts again for the next
+    private static final ExecutorService DIFF_EXECUTOR = newDiffExecutor();
+
     // store a member variable for the earthquakes
-    private final ArrayList<Earthquake> mEarthquakes;
+    private EarthquakeTable mEarthquakes;
+    // pages through results bigger than one table, rows are read from it instead when set, the
+    // table then only fills the rows whose page is not loaded yet
+    private EarthquakePager mPager;
+    // number of tables submitted so far, only the diff for the last one is applied
+    private int mGeneration;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
     private final Context mContext;
+    // the magnitude colors, looked up once instead of on every bind
+    private final int[] mMagnitudeColors;
     private ItemClickListener clickListener;
-    //pass in the earthquakes array list into the constructor
-    public EarthquakeAdapter(Context context,ArrayList<Earthquake> earthquakes) {
+    //pass in the earthquakes table into the constructor
+    public EarthquakeAdapter(Context context,EarthquakeTable earthquakes) {
         super();
         mEarthquakes = earthquakes;
         mContext = context;
-    }
-    /**
-    * Return the formatted date string from a date object
-     */
-
-    private String formatDate(Date dateObj) {
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("LLL dd, yyyy");
-        return  simpleDateFormat.format(dateObj);
+        mMagnitudeColors = new int[MAGNITUDE_COLOR_IDS.length];
+        for(int i = 0; i < MAGNITUDE_COLOR_IDS.length; ++i) {
+            mMagnitudeColors[i] = ContextCompat.getColor(context,MAGNITUDE_COLOR_IDS[i]);
+        }
     }
 
     /**
-    * Return the formatted time string from a date object
+     * show a new table of earthquakes. A later snapshot of the same table only inserts the new
+     * rows, any other table is compared with the one shown on a background thread by event id so
+     * that only the rows which were added, removed or revised are bound again
      */
-    private String formatTime(Date dateObj) {
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("h:mm a");
-        return simpleDateFormat.format(dateObj);
-    }
-
-    private String offset(String location) {
-        // finding occurrence of ',' to check if offset exists already
-        int index = location.indexOf(",");
-        if(index == -1){
-            return "Near the";
+    public void submitEarthquakes(EarthquakeTable earthquakes) {
+        // a newer table makes the diffs still running for older ones useless
+        int generation = ++mGeneration;
+        if(mPager != null) {
+            // the rows shown came from pages, there is no table to compare with
+            mPager.setPageListener(null);
+            mPager = null;
+            mEarthquakes = earthquakes;
+            notifyDataSetChanged();
+            return;
         }
-        else{
-            return location.substring(0,index);
+        EarthquakeTable shown = mEarthquakes;
+        if(earthquakes.continues(shown)) {
+            int start = shown.size();
+            mEarthquakes = earthquakes;
+            if(earthquakes.size() > start) {
+                notifyItemRangeInserted(start,earthquakes.size() - start);
+            }
+            return;
         }
+        // a diff finishing after a newer table was submitted is dropped
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                        new EarthquakeDiffCallback(shown,earthquakes),false);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(generation != mGeneration) {
+                            return;
+                        }
+                        mEarthquakes = earthquakes;
+                        result.dispatchUpdatesTo(EarthquakeAdapter.this);
+                    }
+                });
+            }
+        });
+    }
+
+    private static ExecutorService newDiffExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1,1,30,TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
-     * get the primary location name for the fetched location information
+     * page through all the matching earthquakes. The pager's first pages may differ from the rows
+     * shown, so those are bound again from the pager and the rows after them are inserted. Until
+     * the page of a row is in, the row shown before stays, for clicks as well
      */
-
-    private String primaryLocation(String location) {
-        // finding the length of the string
-        int len = location.length();
-        // finding occurrence of ',' to check if offset exists already
-        int index = location.indexOf(",");
-        if(index == -1){
-            return location;
+    public void submitPager(EarthquakePager pager) {
+        // drop the diffs still running for tables
+        ++mGeneration;
+        if(mPager != null) {
+            mPager.setPageListener(null);
+        }
+        int shown = getItemCount();
+        mPager = pager;
+        pager.setPageListener(new EarthquakePager.PageListener() {
+            @Override
+            public void onPageLoaded(int page) {
+                int start = page * EarthquakePager.PAGE_SIZE;
+                notifyItemRangeChanged(start,
+                        Math.min(EarthquakePager.PAGE_SIZE,pager.size() - start));
+            }
+        });
+        if(pager.size() >= shown) {
+            // binding the rows on screen requests their pages if they are not in yet
+            notifyItemRangeChanged(0,shown);
+            notifyItemRangeInserted(shown,pager.size() - shown);
         }
         else{
-            return location.substring(index+1,len);
+            notifyDataSetChanged();
         }
     }
 
     /**
-     * get the color of the circle based on the magnitude
+     * get the url of the earthquake shown at the given position, null if its page is not loaded
+     * and no row was shown there before
      */
-    private int getMagnitudeColor(double magnitude) {
-        if(magnitude <= 2){
-            return ContextCompat.getColor(mContext,R.color.magnitude1);
-        }
-        if(magnitude <= 3){
-            return ContextCompat.getColor(mContext,R.color.magnitude2);
-        }
-        if(magnitude <= 4){
-            return ContextCompat.getColor(mContext,R.color.magnitude3);
+    public String getUrl(int position) {
+        if(mPager != null) {
+            EarthquakeTable page = mPager.getPage(position);
+            int row = EarthquakePager.rowInPage(position);
+            if(page != null && row < page.size()) {
+                return page.getUrl(row);
+            }
+            return position < mEarthquakes.size() ? mEarthquakes.getUrl(position) : null;
         }
-        if(magnitude <= 5){
-            return ContextCompat.getColor(mContext,R.color.magnitude4);
-        }
-        if(magnitude <= 6){
-            return ContextCompat.getColor(mContext,R.color.magnitude5);
-        }
-        if(magnitude <= 7){
-            return ContextCompat.getColor(mContext,R.color.magnitude6);
-        }
-        if(magnitude <= 8){
-            return ContextCompat.getColor(mContext,R.color.magnitude7);
-        }
-        if(magnitude <= 9){
-            return ContextCompat.getColor(mContext,R.color.magnitude8);
-        }
-        if(magnitude <= 10){
-            return ContextCompat.getColor(mContext,R.color.magnitude9);
-        }
-        return ContextCompat.getColor(mContext,R.color.magnitude10plus);
+        return mEarthquakes.getUrl(position);
     }
 
     /**
@@ -124,52 +170,59 @@ public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.Vi
         return new ViewHolder(view);
     }
 
-    // involves populating data into item through holder
+    // involves populating data into item through holder, every text was already formatted
+    // before the table or its page was shown so nothing is allocated here
     @Override
     public void onBindViewHolder(EarthquakeAdapter.ViewHolder holder, int position) {
-        // Get the data model based on position
-        Earthquake earthquake = mEarthquakes.get(position);
-
-        // formatting the magnitude to show only one digit after 0
-        DecimalFormat decimalFormat = new DecimalFormat("0.0");
-        String output = decimalFormat.format(earthquake.getMagnitude());
+        long start = PipelineMetrics.start();
+        EarthquakeTable earthquakes = mEarthquakes;
+        int row = position;
+        if(mPager != null) {
+            EarthquakeTable page = mPager.getPage(position);
+            if(page != null && EarthquakePager.rowInPage(position) < page.size()) {
+                earthquakes = page;
+                row = EarthquakePager.rowInPage(position);
+            }
+            else if(position >= mEarthquakes.size()) {
+                // the page is still loading, the row is bound again once it is in
+                bindPlaceholder(holder);
+                return;
+            }
+        }
         // set the proper background on the magnitude circle
         // fetch the background from the TextView which is gradient drawable
         GradientDrawable magnitudeCircle = (GradientDrawable)holder.magTextView.getBackground();
-        // get the appropriate background color based on the current earthquake magnitude
-        int magnitudeColor = getMagnitudeColor(earthquake.getMagnitude());
-
-        // set the color on the magnitude circle
-        magnitudeCircle.setColor(magnitudeColor);
+        // set the color for the current earthquake magnitude on the magnitude circle
+        magnitudeCircle.setColor(mMagnitudeColors[earthquakes.getColorIndex(row)]);
 
         // set the item views based on data model
-        TextView magView = holder.magTextView;
-        magView.setText(output);
-
-        TextView offsetView = holder.offsetTextView;
-        offsetView.setText(offset(earthquake.getLocation()));
-
-        TextView locationView = holder.locationTextView;
-        locationView.setText(primaryLocation(earthquake.getLocation()));
-
-        // create a date object from the time in milliseconds
-        Date dateObj = new Date(earthquake.getDateTime());
-        String date = formatDate(dateObj);
-        String time = formatTime(dateObj);
-
-        TextView dateView = holder.dateTextView;
-        dateView.setText(date);
-
-        TextView timeView = holder.timeTextView;
-        timeView.setText(time);
+        holder.magTextView.setText(earthquakes.getMagnitudeText(row));
+        holder.offsetTextView.setText(earthquakes.getOffset(row));
+        holder.locationTextView.setText(earthquakes.getPrimaryLocation(row));
+        holder.dateTextView.setText(earthquakes.getDate(row));
+        holder.timeTextView.setText(earthquakes.getTime(row));
+        PipelineMetrics.record(PipelineMetrics.BIND,start);
+    }
 
+    // show an empty row while its page is loading
+    private void bindPlaceholder(EarthquakeAdapter.ViewHolder holder) {
+        GradientDrawable magnitudeCircle = (GradientDrawable)holder.magTextView.getBackground();
+        magnitudeCircle.setColor(mMagnitudeColors[0]);
+        holder.magTextView.setText("");
+        holder.offsetTextView.setText("");
+        holder.locationTextView.setText("");
+        holder.dateTextView.setText("");
+        holder.timeTextView.setText("");
     }
 
     /**
-     * Returns the total count of items in the array list
+     * Returns the total count of items in the table, or of all the pages
      */
     @Override
     public int getItemCount() {
+        if(mPager != null) {
+            return mPager.size();
+        }
         return mEarthquakes.size();
     }
 
@@ -0,0 +1,41 @@
+package com.example.android.earthquake;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * compares two tables of earthquakes for DiffUtil, rows are the same item if they have the same
+ * event id and their contents are the same if USGS did not revise the event in between
+ */
+public class EarthquakeDiffCallback extends DiffUtil.Callback {
+
+    private final EarthquakeTable mOld;
+    private final EarthquakeTable mNew;
+
+    public EarthquakeDiffCallback(EarthquakeTable oldEarthquakes,EarthquakeTable newEarthquakes) {
+        mOld = oldEarthquakes;
+        mNew = newEarthquakes;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOld.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNew.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+        return mOld.getId(oldPosition).equals(mNew.getId(newPosition));
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+        return mOld.getUpdated(oldPosition) == mNew.getUpdated(newPosition)
+                && mOld.getMagnitude(oldPosition) == mNew.getMagnitude(newPosition)
+                && mOld.getDateTime(oldPosition) == mNew.getDateTime(newPosition)
+                && mOld.hasSameLocation(oldPosition, mNew, newPosition);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.earthquake;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats the fields of an earthquake the way they are shown in the list. The formats are
+ * created once and reused, so a formatter must only be used by one thread at a time
+ */
+public class EarthquakeFormatter {
+
+    // number of magnitude colors, see colorIndex
+    public static final int COLOR_COUNT = 10;
+    static final String NEAR_THE = "Near the";
+
+    private final DecimalFormat mDecimalFormat = new DecimalFormat("0.0");
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("LLL dd, yyyy");
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("h:mm a");
+    private final Date mDate = new Date();
+
+    /**
+     * format the magnitude to show only one digit after 0
+     */
+    public String formatMagnitude(double magnitude) {
+        return mDecimalFormat.format(magnitude);
+    }
+
+    /**
+     * Return the formatted date string from the time in milliseconds
+     */
+    public String formatDate(long dateTime) {
+        mDate.setTime(dateTime);
+        return mDateFormat.format(mDate);
+    }
+
+    /**
+     * Return the formatted time string from the time in milliseconds
+     */
+    public String formatTime(long dateTime) {
+        mDate.setTime(dateTime);
+        return mTimeFormat.format(mDate);
+    }
+
+    /**
+     * get the offset part of the location, like "10km N of"
+     */
+    public static String offset(String location) {
+        // finding occurrence of ',' to check if offset exists already
+        int index = location.indexOf(",");
+        if(index == -1){
+            return NEAR_THE;
+        }
+        else{
+            return location.substring(0,index);
+        }
+    }
+
+    /**
+     * get the primary location name for the fetched location information
+     */
+    public static String primaryLocation(String location) {
+        // finding occurrence of ',' to check if offset exists already
+        int index = location.indexOf(",");
+        if(index == -1){
+            return location;
+        }
+        else{
+            return location.substring(index+1);
+        }
+    }
+
+    /**
+     * get the index of the magnitude circle color, 0 for R.color.magnitude1 up to 9 for
+     * R.color.magnitude10plus
+     */
+    public static int colorIndex(double magnitude) {
+        if(magnitude <= 2){
+            return 0;
+        }
+        if(magnitude > 10){
+            return COLOR_COUNT - 1;
+        }
+        // magnitudes up to 3 get index 1, up to 4 index 2 and so on
+        return (int)Math.ceil(magnitude) - 2;
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.android.earthquake;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Spatial index over the loaded earthquakes for bounding box and radius queries. The globe is
+ * split into cells of CELL_SIZE degrees and the rows of every cell are kept one after the other
+ * in a single array, so a query only looks at the rows of the cells it touches and building the
+ * grid is two passes over the table. Earthquakes without coordinates are left out.
+ * The search box of the list filters by an {@link Area} when coordinates are typed into it
+ */
+public class EarthquakeGrid {
+
+    // size of a cell in degrees of latitude and longitude
+    private static final double CELL_SIZE = 2;
+    private static final int COLUMNS = (int)(360 / CELL_SIZE);
+    private static final int ROWS = (int)(180 / CELL_SIZE);
+    // mean radius of the earth
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+    // radius searched around a point typed without one
+    static final double DEFAULT_RADIUS_KM = 250;
+    private static final String NUMBER = "\\s*([-+]?\\d+(?:\\.\\d*)?)\\s*";
+    // "lat,lon" optionally followed by a radius like "300km"
+    private static final Pattern POINT = Pattern.compile(
+            NUMBER+","+NUMBER+"(?:\\s([\\d.]+)\\s*km)?\\s*",Pattern.CASE_INSENSITIVE);
+    // "minLat,maxLat,minLon,maxLon"
+    private static final Pattern BOX = Pattern.compile(NUMBER+","+NUMBER+","+NUMBER+","+NUMBER);
+
+    /**
+     * a circle or a box typed into the search box, like "35.7,139.7 300km" for the earthquakes
+     * within 300 km of Tokyo or "30,45,125,150" for the ones between those latitudes and
+     * longitudes
+     */
+    public static final class Area {
+        // the center and radius of a circle, the radius is NaN for a box
+        private final double mLatitude;
+        private final double mLongitude;
+        private final double mRadiusKm;
+        // the latitudes and longitudes of a box
+        private final double mMinLat;
+        private final double mMaxLat;
+        private final double mMinLon;
+        private final double mMaxLon;
+
+        private Area(double latitude,double longitude,double radiusKm,double minLat,
+                     double maxLat,double minLon,double maxLon) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mRadiusKm = radiusKm;
+            mMinLat = minLat;
+            mMaxLat = maxLat;
+            mMinLon = minLon;
+            mMaxLon = maxLon;
+        }
+
+        /**
+         * read the area of a query, null if the query is not one, like a place name or
+         * coordinates off the globe
+         */
+        public static Area parse(String query) {
+            try {
+                Matcher box = BOX.matcher(query);
+                if(box.matches()) {
+                    double minLat = Double.parseDouble(box.group(1));
+                    double maxLat = Double.parseDouble(box.group(2));
+                    double minLon = Double.parseDouble(box.group(3));
+                    double maxLon = Double.parseDouble(box.group(4));
+                    if(!isLatitude(minLat) || !isLatitude(maxLat) || minLat > maxLat
+                            || !isLongitude(minLon) || !isLongitude(maxLon)) {
+                        return null;
+                    }
+                    return new Area(0,0,Double.NaN,minLat,maxLat,minLon,maxLon);
+                }
+                Matcher point = POINT.matcher(query);
+                if(point.matches()) {
+                    double latitude = Double.parseDouble(point.group(1));
+                    double longitude = Double.parseDouble(point.group(2));
+                    double radiusKm = point.group(3) != null
+                            ? Double.parseDouble(point.group(3)) : DEFAULT_RADIUS_KM;
+                    if(!isLatitude(latitude) || !isLongitude(longitude)) {
+                        return null;
+                    }
+                    return new Area(latitude,longitude,radiusKm,0,0,0,0);
+                }
+            }
+            catch (NumberFormatException e) {
+                // like a radius of "1.2.3"
+            }
+            return null;
+        }
+
+        /**
+         * get the earthquakes of the grid in the area, in the order of its table
+         */
+        public EarthquakeTable find(EarthquakeGrid grid) {
+            if(Double.isNaN(mRadiusKm)) {
+                return grid.boundingBox(mMinLat,mMaxLat,mMinLon,mMaxLon);
+            }
+            return grid.withinRadius(mLatitude,mLongitude,mRadiusKm);
+        }
+
+        private static boolean isLatitude(double latitude) {
+            return latitude >= -90 && latitude <= 90;
+        }
+
+        private static boolean isLongitude(double longitude) {
+            return longitude >= -180 && longitude <= 180;
+        }
+    }
+
+    private final EarthquakeTable mEarthquakes;
+    // the rows of cell c are mRows[mCellStarts[c]] up to mRows[mCellStarts[c + 1]]
+    private final int[] mCellStarts;
+    private final int[] mRows;
+
+    /**
+     * build the grid for the earthquakes of the table
+     */
+    public EarthquakeGrid(EarthquakeTable earthquakes) {
+        mEarthquakes = earthquakes;
+        int size = earthquakes.size();
+        int[] cells = new int[size];
+        mCellStarts = new int[COLUMNS * ROWS + 1];
+        int located = 0;
+        for(int row = 0; row < size; ++row) {
+            double latitude = earthquakes.getLatitude(row);
+            double longitude = earthquakes.getLongitude(row);
+            if(Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                cells[row] = -1;
+                continue;
+            }
+            cells[row] = cell(latitudeCell(latitude),longitudeCell(longitude));
+            ++mCellStarts[cells[row] + 1];
+            ++located;
+        }
+        for(int cell = 0; cell < COLUMNS * ROWS; ++cell) {
+            mCellStarts[cell + 1] += mCellStarts[cell];
+        }
+        // rows are placed in table order, so every cell keeps them ascending
+        mRows = new int[located];
+        int[] next = Arrays.copyOf(mCellStarts,COLUMNS * ROWS);
+        for(int row = 0; row < size; ++row) {
+            if(cells[row] >= 0) {
+                mRows[next[cells[row]]++] = row;
+            }
+        }
+    }
+
+    // get the table whose rows are in the grid
+    public EarthquakeTable getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    /**
+     * return the earthquakes within the latitudes and longitudes in degrees in the order of the
+     * table. A box crossing the antimeridian has a minimum longitude above its maximum one
+     */
+    public EarthquakeTable boundingBox(double minLat,double maxLat,double minLon,double maxLon) {
+        RowList rows = new RowList();
+        if(minLat <= maxLat) {
+            if(minLon <= maxLon) {
+                collectBox(rows,minLat,maxLat,minLon,maxLon);
+            }
+            else{
+                collectBox(rows,minLat,maxLat,minLon,180);
+                collectBox(rows,minLat,maxLat,-180,maxLon);
+            }
+        }
+        return toTable(rows);
+    }
+
+    /**
+     * return the earthquakes at most radiusKm away from the given point along the surface of the
+     * earth, in the order of the table
+     */
+    public EarthquakeTable withinRadius(double latitude,double longitude,double radiusKm) {
+        RowList rows = new RowList();
+        // angular radius, only the cells of its bounding box can hold matches
+        double radius = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double minLat = latitude - radius;
+        double maxLat = latitude + radius;
+        if(radius >= 180 || minLat <= -90 || maxLat >= 90) {
+            // a pole is inside the circle, so it reaches every longitude
+            collectRadius(rows,Math.max(-90,minLat),Math.min(90,maxLat),-180,180,
+                    latitude,longitude,radiusKm);
+        }
+        else{
+            // the widest longitude span of the circle, at the latitude where it touches the
+            // meridians bounding it
+            double span = Math.toDegrees(Math.asin(Math.sin(Math.toRadians(radius))
+                    / Math.cos(Math.toRadians(latitude))));
+            double minLon = normalizeLongitude(longitude - span);
+            double maxLon = normalizeLongitude(longitude + span);
+            if(minLon <= maxLon) {
+                collectRadius(rows,minLat,maxLat,minLon,maxLon,latitude,longitude,radiusKm);
+            }
+            else{
+                collectRadius(rows,minLat,maxLat,minLon,180,latitude,longitude,radiusKm);
+                collectRadius(rows,minLat,maxLat,-180,maxLon,latitude,longitude,radiusKm);
+            }
+        }
+        return toTable(rows);
+    }
+
+    /**
+     * great circle distance in km between two points given in degrees
+     */
+    public static double distanceKm(double lat1,double lon1,double lat2,double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1,Math.sqrt(a)));
+    }
+
+    private void collectBox(RowList rows,double minLat,double maxLat,double minLon,
+                            double maxLon) {
+        for(int latCell = latitudeCell(minLat); latCell <= latitudeCell(maxLat); ++latCell) {
+            for(int lonCell = longitudeCell(minLon); lonCell <= longitudeCell(maxLon); ++lonCell) {
+                int cell = cell(latCell,lonCell);
+                for(int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; ++i) {
+                    int row = mRows[i];
+                    double lat = mEarthquakes.getLatitude(row);
+                    double lon = mEarthquakes.getLongitude(row);
+                    if(lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+                        rows.add(row);
+                    }
+                }
+            }
+        }
+    }
+
+    private void collectRadius(RowList rows,double minLat,double maxLat,double minLon,
+                               double maxLon,double latitude,double longitude,double radiusKm) {
+        for(int latCell = latitudeCell(minLat); latCell <= latitudeCell(maxLat); ++latCell) {
+            for(int lonCell = longitudeCell(minLon); lonCell <= longitudeCell(maxLon); ++lonCell) {
+                int cell = cell(latCell,lonCell);
+                for(int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; ++i) {
+                    int row = mRows[i];
+                    if(distanceKm(latitude,longitude,mEarthquakes.getLatitude(row),
+                            mEarthquakes.getLongitude(row)) <= radiusKm) {
+                        rows.add(row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * copy the rows into a new table, sorted so that the order of the table is kept
+     */
+    private EarthquakeTable toTable(RowList rows) {
+        int[] sorted = Arrays.copyOf(rows.mRows,rows.mSize);
+        Arrays.sort(sorted);
+        EarthquakeTable earthquakes = new EarthquakeTable(sorted.length);
+        for(int row : sorted) {
+            earthquakes.add(mEarthquakes,row);
+        }
+        return earthquakes;
+    }
+
+    private static int cell(int latCell,int lonCell) {
+        return latCell * COLUMNS + lonCell;
+    }
+
+    private static int latitudeCell(double latitude) {
+        return clamp((int)Math.floor((latitude + 90) / CELL_SIZE),ROWS);
+    }
+
+    private static int longitudeCell(double longitude) {
+        return clamp((int)Math.floor((longitude + 180) / CELL_SIZE),COLUMNS);
+    }
+
+    // keep a cell inside the grid, 90 and 180 degrees fall into the last cells
+    private static int clamp(int cell,int cells) {
+        return Math.max(0,Math.min(cells - 1,cell));
+    }
+
+    // bring a longitude into -180 to 180 degrees
+    private static double normalizeLongitude(double longitude) {
+        if(longitude > 180) {
+            return longitude - 360;
+        }
+        if(longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+
+    /**
+     * growing array of rows, so the matches are not boxed
+     */
+    private static class RowList {
+        int[] mRows = new int[16];
+        int mSize;
+
+        void add(int row) {
+            if(mSize == mRows.length) {
+                mRows = Arrays.copyOf(mRows,mSize * 2);
+            }
+            mRows[mSize++] = row;
+        }
+    }
+}
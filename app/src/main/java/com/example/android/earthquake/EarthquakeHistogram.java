@@ -0,0 +1,267 @@
+package com.example.android.earthquake;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Counts the loaded earthquakes per magnitude band and time bucket, like the number of events of
+ * every magnitude color per day of the last 30 days. The bands are the magnitude circle colors of
+ * {@link EarthquakeFormatter#colorIndex(double)}. Every event is remembered with the cell it is
+ * counted in, so adding, revising or removing an event only changes the counts of its old and
+ * new cell and the events are never counted again from the start.
+ * The window of buckets moves forward when a newer event comes in, the buckets falling out of it
+ * are dropped. A histogram is filled on one thread, {@link #snapshot()} returns a read only copy
+ * of the counts which can be handed to other threads
+ */
+public class EarthquakeHistogram {
+
+    public static final long DAY = 24L * 60 * 60 * 1000;// milliseconds
+    // number of magnitude bands
+    public static final int BANDS = EarthquakeFormatter.COLOR_COUNT;
+
+    private final long mBucketSize;// milliseconds
+    private final int mBuckets;
+    // buckets start at midnight of this time zone when they are a day long
+    private final TimeZone mZone;
+    // the cell every event is counted in as bucket number * BANDS + band, null for snapshots
+    private final HashMap<String,Long> mCells;
+    // counts of the buckets in the window, bucket b is at (b % mBuckets) * BANDS + band
+    private final int[] mCounts;
+    private final int[] mBandCounts;// counts per band over the whole window
+    private int mTotal;
+    // number of the oldest bucket in the window, counted from the epoch
+    private long mFirst;
+
+    /**
+     * create an empty histogram of the given number of buckets, the newest one holds now
+     */
+    public EarthquakeHistogram(long bucketSize,int buckets,TimeZone zone,long now) {
+        mBucketSize = bucketSize;
+        mBuckets = buckets;
+        mZone = zone;
+        mCells = new HashMap<>();
+        mCounts = new int[buckets * BANDS];
+        mBandCounts = new int[BANDS];
+        mFirst = bucketOf(now) - buckets + 1;
+    }
+
+    // create a read only copy of the counts of the histogram
+    private EarthquakeHistogram(EarthquakeHistogram histogram) {
+        mBucketSize = histogram.mBucketSize;
+        mBuckets = histogram.mBuckets;
+        mZone = histogram.mZone;
+        mCells = null;
+        mCounts = histogram.mCounts.clone();
+        mBandCounts = histogram.mBandCounts.clone();
+        mTotal = histogram.mTotal;
+        mFirst = histogram.mFirst;
+    }
+
+    /**
+     * return a read only copy of the counts so far
+     */
+    public EarthquakeHistogram snapshot() {
+        return new EarthquakeHistogram(this);
+    }
+
+    /**
+     * count a new earthquake or move a revised one to the cell of its new magnitude and time
+     */
+    public void put(String id,double magnitude,long time) {
+        checkWritable();
+        long bucket = bucketOf(time);
+        if(bucket >= mFirst + mBuckets) {
+            advance(bucket - mBuckets + 1);
+        }
+        long cell = bucket * BANDS + EarthquakeFormatter.colorIndex(magnitude);
+        Long old = mCells.get(id);
+        if(old != null) {
+            if(old == cell) {
+                // put again unchanged, nothing is allocated
+                return;
+            }
+            count(old,-1);
+        }
+        mCells.put(id,cell);
+        count(cell,1);
+    }
+
+    /**
+     * stop counting the earthquake, for example when USGS deleted it
+     */
+    public void remove(String id) {
+        checkWritable();
+        Long old = mCells.remove(id);
+        if(old != null) {
+            count(old,-1);
+        }
+    }
+
+    /**
+     * put the earthquakes in the rows from up to to of the table, the rows added to a table
+     * since the last call are put by passing the old size as from
+     */
+    public void putAll(EarthquakeTable earthquakes,int from,int to) {
+        for(int row = from; row < to; ++row) {
+            put(earthquakes.getId(row),earthquakes.getMagnitude(row),
+                    earthquakes.getDateTime(row));
+        }
+    }
+
+    /**
+     * apply the changes of a sync, the revised and new earthquakes and the ids of deleted ones
+     */
+    public void putChanges(EarthquakeTable changed,List<String> deletedIds) {
+        putAll(changed,0,changed.size());
+        for(String id : deletedIds) {
+            remove(id);
+        }
+    }
+
+    /**
+     * apply the changes of a merge into an {@link EarthquakeSet}
+     */
+    public void putChanges(EarthquakeSet.ChangeSet changes) {
+        putAll(changes.getAdded(),0,changes.getAdded().size());
+        putChanges(changes.getUpdated(),changes.getRemovedIds());
+    }
+
+    /**
+     * count exactly the earthquakes of the table, like a whole list read again. Only the events
+     * which are new, were revised or are no longer in the table change the counts, the ones
+     * counted in the same cell before are left alone
+     */
+    public void putOnly(EarthquakeTable earthquakes) {
+        checkWritable();
+        // only the ids of the table, its rows are not copied
+        HashSet<String> kept = new HashSet<>(earthquakes.size() * 4 / 3 + 1);
+        for(int row = 0; row < earthquakes.size(); ++row) {
+            kept.add(earthquakes.getId(row));
+        }
+        Iterator<Map.Entry<String,Long>> cells = mCells.entrySet().iterator();
+        while(cells.hasNext()) {
+            Map.Entry<String,Long> cell = cells.next();
+            if(!kept.contains(cell.getKey())) {
+                cells.remove();
+                count(cell.getValue(),-1);
+            }
+        }
+        putAll(earthquakes,0,earthquakes.size());
+    }
+
+    /**
+     * forget every earthquake, the window stays where it is
+     */
+    public void clear() {
+        checkWritable();
+        mCells.clear();
+        Arrays.fill(mCounts,0);
+        Arrays.fill(mBandCounts,0);
+        mTotal = 0;
+    }
+
+    // get the number of buckets, bucket 0 is the oldest
+    public int getBuckets() {
+        return mBuckets;
+    }
+
+    // get the number of earthquakes of the band in the bucket
+    public int getCount(int band,int bucket) {
+        return mCounts[index(mFirst + bucket) + band];
+    }
+
+    // get the number of earthquakes in the bucket
+    public int getBucketCount(int bucket) {
+        int count = 0;
+        int index = index(mFirst + bucket);
+        for(int band = 0; band < BANDS; ++band) {
+            count += mCounts[index + band];
+        }
+        return count;
+    }
+
+    // get the number of earthquakes of the band in the window
+    public int getBandCount(int band) {
+        return mBandCounts[band];
+    }
+
+    // get the number of earthquakes in the window
+    public int getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * get the time in milliseconds at which the bucket starts
+     */
+    public long getBucketStart(int bucket) {
+        long start = (mFirst + bucket) * mBucketSize;
+        return start - mZone.getOffset(start);
+    }
+
+    /**
+     * get the bucket holding the most earthquakes, the newest one if there are several, -1 if
+     * the histogram is empty
+     */
+    public int getBusiestBucket() {
+        int busiest = -1;
+        int most = 0;
+        for(int bucket = 0; bucket < mBuckets; ++bucket) {
+            int count = getBucketCount(bucket);
+            if(count > 0 && count >= most) {
+                busiest = bucket;
+                most = count;
+            }
+        }
+        return busiest;
+    }
+
+    /**
+     * add delta to the count of the cell, cells of buckets which left the window are not counted
+     */
+    private void count(long cell,int delta) {
+        long bucket = cell / BANDS;
+        int band = (int)(cell % BANDS);
+        if(bucket < mFirst) {
+            return;
+        }
+        mCounts[index(bucket) + band] += delta;
+        mBandCounts[band] += delta;
+        mTotal += delta;
+    }
+
+    /**
+     * move the window forward so that first is its oldest bucket, the buckets before it are
+     * dropped and their slots reused for the new buckets
+     */
+    private void advance(long first) {
+        for(long bucket = mFirst; bucket < Math.min(first,mFirst + mBuckets); ++bucket) {
+            int index = index(bucket);
+            for(int band = 0; band < BANDS; ++band) {
+                mBandCounts[band] -= mCounts[index + band];
+                mTotal -= mCounts[index + band];
+                mCounts[index + band] = 0;
+            }
+        }
+        mFirst = first;
+    }
+
+    // times are after the epoch, so the division rounds down
+    private long bucketOf(long time) {
+        return (time + mZone.getOffset(time)) / mBucketSize;
+    }
+
+    private int index(long bucket) {
+        return (int)(bucket % mBuckets) * BANDS;
+    }
+
+    private void checkWritable() {
+        if(mCells == null) {
+            throw new IllegalStateException("Snapshots of a histogram are read only");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.android.earthquake;
+
+/**
+ * In memory index over the earthquakes loaded for a magnitude range, keeps them sorted by time
+ * and by magnitude so that a narrower magnitude range or another order can be answered without
+ * a new network request. The loaded earthquakes go stale like the saved ones, an index older than
+ * {@link EarthquakeSync#FRESHNESS} answers no range
+ */
+public class EarthquakeIndex {
+
+    private final int mMinMag;// minimum magnitude of the loaded range
+    private final int mMaxMag;// maximum magnitude of the loaded range
+    private final boolean mComplete;// true if every event of the range was loaded
+    private final long mLoadedAt;// milliseconds, when the earthquakes were synced with USGS
+    private final EarthquakeTable mEarthquakes;// the loaded earthquakes
+    private final int[] mByTime;// rows sorted by descending time
+    private final int[] mByMagnitude;// rows sorted by ascending magnitude
+    private final double[] mMagnitudes;// magnitudes of mByMagnitude for binary search
+
+    /**
+     * build the index for the earthquakes loaded for the given range, complete tells if the table
+     * holds every event of the range or was cut off by the request limit, loadedAt is when they
+     * were synced with USGS
+     */
+    public EarthquakeIndex(int minMag,int maxMag,EarthquakeTable earthquakes,boolean complete,
+                           long loadedAt) {
+        mMinMag = minMag;
+        mMaxMag = maxMag;
+        mComplete = complete;
+        mLoadedAt = loadedAt;
+        mEarthquakes = earthquakes;
+        // the rows are sorted by primitive keys, nothing is boxed per event
+        long[] keys = new long[earthquakes.size()];
+        for(int row = 0; row < keys.length; ++row) {
+            keys[row] = -earthquakes.getDateTime(row);
+        }
+        mByTime = sortRows(keys);
+        for(int row = 0; row < keys.length; ++row) {
+            keys[row] = sortableBits(earthquakes.getMagnitude(row));
+        }
+        mByMagnitude = sortRows(keys);
+        mMagnitudes = new double[mByMagnitude.length];
+        for(int i = 0; i < mByMagnitude.length; ++i) {
+            mMagnitudes[i] = earthquakes.getMagnitude(mByMagnitude[i]);
+        }
+    }
+
+    /**
+     * check if the earthquakes for the given range can be taken from this index at now, that is
+     * the loaded range was complete, contains the given one and is still fresh
+     */
+    public boolean covers(int minMag,int maxMag,long now) {
+        return mComplete && minMag >= mMinMag && maxMag <= mMaxMag
+                && now - mLoadedAt < EarthquakeSync.FRESHNESS;
+    }
+
+    /**
+     * return the earthquakes between the given magnitudes in the order used by the USGS orderby
+     * parameter, only meaningful if {@link #covers(int, int, long)} is true
+     */
+    public EarthquakeTable query(int minMag,int maxMag,String orderBy) {
+        // the events within the magnitudes are one block of the magnitude sorted array
+        int from = lowerBound(minMag);
+        int to = upperBound(maxMag);
+        EarthquakeTable earthquakes = new EarthquakeTable(Math.max(to - from, 0));
+        switch (orderBy) {
+            case "magnitude-asc":
+                for(int i = from; i < to; ++i) {
+                    earthquakes.add(mEarthquakes, mByMagnitude[i]);
+                }
+                break;
+            case "magnitude":
+                for(int i = to - 1; i >= from; --i) {
+                    earthquakes.add(mEarthquakes, mByMagnitude[i]);
+                }
+                break;
+            case "time-asc":
+                for(int i = mByTime.length - 1; i >= 0; --i) {
+                    addIfWithin(earthquakes, mByTime[i], minMag, maxMag);
+                }
+                break;
+            default:
+                for(int row : mByTime) {
+                    addIfWithin(earthquakes, row, minMag, maxMag);
+                }
+        }
+        return earthquakes;
+    }
+
+    private void addIfWithin(EarthquakeTable earthquakes,int row,int minMag,int maxMag) {
+        double magnitude = mEarthquakes.getMagnitude(row);
+        if(magnitude >= minMag && magnitude <= maxMag) {
+            earthquakes.add(mEarthquakes, row);
+        }
+    }
+
+    /**
+     * get the rows sorted by ascending key with a merge sort, which is stable so rows of the same
+     * key stay in the order of the table
+     */
+    static int[] sortRows(long[] keys) {
+        int[] rows = new int[keys.length];
+        for(int i = 0; i < rows.length; ++i) {
+            rows[i] = i;
+        }
+        int[] merged = new int[rows.length];
+        for(int width = 1; width < rows.length; width *= 2) {
+            for(int from = 0; from < rows.length; from += 2 * width) {
+                int middle = Math.min(from + width,rows.length);
+                int to = Math.min(from + 2 * width,rows.length);
+                int left = from;
+                int right = middle;
+                for(int i = from; i < to; ++i) {
+                    if(left < middle && (right >= to || keys[rows[left]] <= keys[rows[right]])) {
+                        merged[i] = rows[left++];
+                    }
+                    else{
+                        merged[i] = rows[right++];
+                    }
+                }
+            }
+            int[] swap = rows;
+            rows = merged;
+            merged = swap;
+        }
+        return rows;
+    }
+
+    /**
+     * get a long which sorts like the double, the bits of a negative double are flipped so it
+     * comes before the smaller negative ones
+     */
+    static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * index of the first magnitude which is not below the given one
+     */
+    private int lowerBound(double magnitude) {
+        int low = 0;
+        int high = mMagnitudes.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(mMagnitudes[mid] < magnitude) {
+                low = mid + 1;
+            }
+            else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * index of the first magnitude which is above the given one
+     */
+    private int upperBound(double magnitude) {
+        int low = 0;
+        int high = mMagnitudes.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(mMagnitudes[mid] <= magnitude) {
+                low = mid + 1;
+            }
+            else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.earthquake;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Pages through a query which matches more earthquakes than a single request returns. USGS is
+ * asked for one page at a time with offset and limit when the list comes near it, and only the
+ * pages closest to the rows last shown are kept, so memory stays the same no matter how many
+ * events match. Pages are requested on the shared I/O threads but the pager itself must only be
+ * used on the main thread
+ */
+public class EarthquakePager {
+
+    private static final String LOG_TAG = "EarthquakePager";
+    // number of earthquakes in a page
+    public static final int PAGE_SIZE = 500;
+    // number of pages kept in memory
+    private static final int MAX_PAGES = 6;
+    // the next page is requested once a row this close to its end is shown
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 4;
+
+    /**
+     * told on the main thread when a page was loaded so the rows can be bound again
+     */
+    public interface PageListener {
+        void onPageLoaded(int page);
+    }
+
+    // query url without offset and limit
+    private final String mUrl;
+    private final int mCount;
+    private final HashMap<Integer,EarthquakeTable> mPages = new HashMap<>();
+    private final HashSet<Integer> mPending = new HashSet<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private PageListener mListener;
+    // the page of the row last asked for, the pages farthest from it are dropped first
+    private int mCurrentPage;
+    // also read on the background thread to skip pages requested before closing
+    private volatile boolean mClosed;
+
+    /**
+     * create a pager for count earthquakes, the url must give the events in a stable order, so
+     * it should have an end time. The earthquakes already fetched for the first rows are split
+     * into the first pages
+     */
+    public EarthquakePager(String url,int count,EarthquakeTable first) {
+        mUrl = url;
+        mCount = count;
+        int pages = Math.min(MAX_PAGES,(first.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        for(int page = 0; page < pages; ++page) {
+            int start = page * PAGE_SIZE;
+            int end = Math.min(first.size(),start + PAGE_SIZE);
+            // only full pages, a partial one is requested again when needed
+            if(end - start < PAGE_SIZE && end < count) {
+                break;
+            }
+            EarthquakeTable table = new EarthquakeTable(end - start);
+            for(int row = start; row < end; ++row) {
+                table.add(first,row);
+            }
+            mPages.put(page,table);
+        }
+    }
+
+    public void setPageListener(PageListener listener) {
+        mListener = listener;
+    }
+
+    // get the number of earthquakes matching the query
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * get the page holding the given row and prefetch the page after or before it, returns null
+     * if the page is not loaded yet, it is requested then and the listener is told once it is in
+     */
+    public EarthquakeTable getPage(int position) {
+        int page = position / PAGE_SIZE;
+        mCurrentPage = page;
+        int row = position % PAGE_SIZE;
+        if(row >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < mCount) {
+            load(page + 1);
+        }
+        else if(row < PREFETCH_DISTANCE && page > 0) {
+            load(page - 1);
+        }
+        EarthquakeTable table = mPages.get(page);
+        if(table == null) {
+            load(page);
+        }
+        return table;
+    }
+
+    /**
+     * get the row inside its page of the earthquake at the given position
+     */
+    public static int rowInPage(int position) {
+        return position % PAGE_SIZE;
+    }
+
+    /**
+     * request a page unless it is loaded or already on its way
+     */
+    private void load(int page) {
+        if(mClosed || mPages.containsKey(page) || !mPending.add(page)) {
+            return;
+        }
+        // USGS counts the offset from 1
+        String url = mUrl + "&offset=" + (page * PAGE_SIZE + 1) + "&limit=" + PAGE_SIZE;
+        IoScheduler.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                EarthquakeTable earthquakes = mClosed ? null : QueryUtils.fetchEarthquakeData(url);
+                if(earthquakes != null) {
+                    earthquakes.format();
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPending.remove(page);
+                        if(mClosed) {
+                            return;
+                        }
+                        if(earthquakes == null) {
+                            // asked again the next time one of its rows is shown
+                            Log.v(LOG_TAG,"Could not load page " + page);
+                            return;
+                        }
+                        mPages.put(page,earthquakes);
+                        evict();
+                        if(mListener != null) {
+                            mListener.onPageLoaded(page);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * drop the pages farthest from the current one until at most MAX_PAGES are left
+     */
+    private void evict() {
+        while(mPages.size() > MAX_PAGES) {
+            int farthest = mCurrentPage;
+            for(int page : mPages.keySet()) {
+                if(Math.abs(page - mCurrentPage) > Math.abs(farthest - mCurrentPage)) {
+                    farthest = page;
+                }
+            }
+            mPages.remove(farthest);
+        }
+    }
+
+    /**
+     * stop loading pages, the results of requests still running are dropped
+     */
+    public void close() {
+        mClosed = true;
+        mListener = null;
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.android.earthquake;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Earthquakes kept unique by their USGS event id, so overlapping responses like a refresh, the
+ * pages of a query or the polls of the live feed can be merged without duplicating events or
+ * replacing the whole list. Every id is looked up in an open addressing hash table of row
+ * numbers, which needs one int per slot instead of an entry object per event, and the rows are
+ * kept in an {@link EarthquakeTable}.
+ * Revisions are told apart by their update time, the newer one wins no matter in which order
+ * they arrive. A revision appends a new row and leaves the old one behind until there are more
+ * old rows than live ones and the rows are compacted. Removed events keep their slot, so an
+ * older revision arriving after the removal does not bring them back.
+ * A set must only be used on one thread at a time
+ */
+public class EarthquakeSet {
+
+    /**
+     * the earthquakes a merge added, updated or removed
+     */
+    public static final class ChangeSet {
+        private final EarthquakeTable mAdded = new EarthquakeTable();
+        private final EarthquakeTable mUpdated = new EarthquakeTable();
+        private final ArrayList<String> mRemovedIds = new ArrayList<>();
+
+        // get the earthquakes which were not in the set
+        public EarthquakeTable getAdded() {
+            return mAdded;
+        }
+
+        // get the newer revisions of earthquakes which were in the set
+        public EarthquakeTable getUpdated() {
+            return mUpdated;
+        }
+
+        // get the ids of the earthquakes which were removed from the set
+        public List<String> getRemovedIds() {
+            return mRemovedIds;
+        }
+
+        public boolean isEmpty() {
+            return mAdded.size() == 0 && mUpdated.size() == 0 && mRemovedIds.isEmpty();
+        }
+    }
+
+    // what putting an earthquake did
+    public static final int IGNORED = 0;// the set has the same or a newer revision
+    public static final int ADDED = 1;
+    public static final int UPDATED = 2;
+
+    private static final int MIN_SLOTS = 16;
+    // rows are only compacted once this many were left behind by revisions
+    private static final int MIN_COMPACT_ROWS = 64;
+
+    private EarthquakeTable mRows;
+    // row + 1 of every known id, 0 for empty slots, the length is a power of two
+    private int[] mSlots;
+    // rows replaced by a newer revision, no slot points at them
+    private BitSet mSuperseded = new BitSet();
+    private int mSupersededCount;
+    // update time of the removal of every removed row
+    private HashMap<Integer,Long> mRemovedAt = new HashMap<>();
+    private int mSize;// number of earthquakes in the set
+
+    // create an empty set
+    public EarthquakeSet() {
+        this(MIN_SLOTS / 2);
+    }
+
+    // create an empty set with room for the given number of earthquakes
+    public EarthquakeSet(int capacity) {
+        mRows = new EarthquakeTable(capacity);
+        mSlots = new int[slotsFor(capacity)];
+    }
+
+    /**
+     * create a set of the earthquakes of the table, of every id the newest revision is kept
+     */
+    public EarthquakeSet(EarthquakeTable earthquakes) {
+        this(earthquakes.size());
+        for(int row = 0; row < earthquakes.size(); ++row) {
+            put(earthquakes,row);
+        }
+    }
+
+    // get the number of earthquakes in the set
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * check if the set holds the earthquake with the given id
+     */
+    public boolean contains(String id) {
+        int row = mSlots[find(id)] - 1;
+        return row >= 0 && !mRemovedAt.containsKey(row);
+    }
+
+    /**
+     * get the update time of the revision the set has of the earthquake, or of its removal, -1 if
+     * the id was never seen
+     */
+    public long getRevision(String id) {
+        int row = mSlots[find(id)] - 1;
+        return row < 0 ? -1 : revisionOf(row);
+    }
+
+    /**
+     * add the earthquake in the row of the table if it is not in the set yet or replace the
+     * revision in the set if this one was updated later, returns IGNORED, ADDED or UPDATED.
+     * An earthquake which was removed is added again by a revision updated after the removal
+     */
+    public int put(EarthquakeTable earthquakes,int row) {
+        int slot = find(earthquakes.getId(row));
+        int known = mSlots[slot] - 1;
+        if(known < 0) {
+            mSlots[slot] = append(earthquakes,row) + 1;
+            ++mSize;
+            if(mRows.size() - mSupersededCount > mSlots.length / 2) {
+                rehash(mSlots.length * 2);
+            }
+            return ADDED;
+        }
+        if(earthquakes.getUpdated(row) <= revisionOf(known)) {
+            return IGNORED;
+        }
+        boolean removed = mRemovedAt.remove(known) != null;
+        supersede(known);
+        mSlots[slot] = append(earthquakes,row) + 1;
+        int result = UPDATED;
+        if(removed) {
+            ++mSize;
+            result = ADDED;
+        }
+        compactIfNeeded();
+        return result;
+    }
+
+    /**
+     * remove the earthquake if the set has a revision of it updated before the given time,
+     * returns false if it was not in the set or has a newer revision
+     */
+    public boolean remove(String id,long updated) {
+        int row = mSlots[find(id)] - 1;
+        if(row < 0 || mRemovedAt.containsKey(row) || updated <= revisionOf(row)) {
+            return false;
+        }
+        mRemovedAt.put(row,updated);
+        --mSize;
+        return true;
+    }
+
+    /**
+     * remove the earthquake for good, like the events USGS deleted
+     */
+    public boolean remove(String id) {
+        return remove(id,Long.MAX_VALUE);
+    }
+
+    /**
+     * put every earthquake of the table and remove the deleted ids, the changes are returned
+     */
+    public ChangeSet merge(EarthquakeTable changed,List<String> deletedIds) {
+        return merge(changed,new EarthquakeTable(),deletedIds);
+    }
+
+    /**
+     * same as {@link #merge(EarthquakeTable, List)}, the earthquakes of left are revisions which
+     * no longer belong in the set, like an event whose magnitude was revised below the ones
+     * shown. They are removed unless the set has a newer revision
+     */
+    public ChangeSet merge(EarthquakeTable changed,EarthquakeTable left,List<String> deletedIds) {
+        ChangeSet changes = new ChangeSet();
+        for(int row = 0; row < left.size(); ++row) {
+            if(remove(left.getId(row),left.getUpdated(row))) {
+                changes.mRemovedIds.add(left.getId(row));
+            }
+        }
+        for(int row = 0; row < changed.size(); ++row) {
+            int result = put(changed,row);
+            if(result == ADDED) {
+                changes.mAdded.add(changed,row);
+            }
+            else if(result == UPDATED) {
+                changes.mUpdated.add(changed,row);
+            }
+        }
+        for(String id : deletedIds) {
+            if(remove(id)) {
+                changes.mRemovedIds.add(id);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * return the earthquakes of the set in a new table, in the order their revisions were put
+     */
+    public EarthquakeTable toTable() {
+        EarthquakeTable earthquakes = new EarthquakeTable(mSize);
+        for(int row = 0; row < mRows.size(); ++row) {
+            if(!mSuperseded.get(row) && !mRemovedAt.containsKey(row)) {
+                earthquakes.add(mRows,row);
+            }
+        }
+        return earthquakes;
+    }
+
+    /**
+     * get the slot of the id, or the empty slot it would go in
+     */
+    private int find(String id) {
+        int mask = mSlots.length - 1;
+        int hash = id.hashCode();
+        // spread the high bits, the ids of one network differ mostly in their last characters
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while(mSlots[slot] != 0 && !mRows.getId(mSlots[slot] - 1).equals(id)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private long revisionOf(int row) {
+        Long removedAt = mRemovedAt.get(row);
+        return removedAt != null ? removedAt : mRows.getUpdated(row);
+    }
+
+    private int append(EarthquakeTable earthquakes,int row) {
+        mRows.add(earthquakes,row);
+        return mRows.size() - 1;
+    }
+
+    private void supersede(int row) {
+        mSuperseded.set(row);
+        ++mSupersededCount;
+    }
+
+    /**
+     * drop the rows left behind by revisions once they outnumber the others
+     */
+    private void compactIfNeeded() {
+        if(mSupersededCount < MIN_COMPACT_ROWS || mSupersededCount * 2 < mRows.size()) {
+            return;
+        }
+        EarthquakeTable rows = new EarthquakeTable(mRows.size() - mSupersededCount);
+        HashMap<Integer,Long> removedAt = new HashMap<>();
+        for(int row = 0; row < mRows.size(); ++row) {
+            if(!mSuperseded.get(row)) {
+                Long removal = mRemovedAt.get(row);
+                if(removal != null) {
+                    removedAt.put(rows.size(),removal);
+                }
+                rows.add(mRows,row);
+            }
+        }
+        mRows = rows;
+        mRemovedAt = removedAt;
+        mSuperseded = new BitSet();
+        mSupersededCount = 0;
+        rehash(slotsFor(rows.size()));
+    }
+
+    /**
+     * put the rows which are not superseded into new slots
+     */
+    private void rehash(int slots) {
+        mSlots = new int[slots];
+        for(int row = 0; row < mRows.size(); ++row) {
+            if(!mSuperseded.get(row)) {
+                mSlots[find(mRows.getId(row))] = row + 1;
+            }
+        }
+    }
+
+    // the smallest power of two keeping the slots at most half full
+    private static int slotsFor(int capacity) {
+        int slots = MIN_SLOTS;
+        while(slots / 2 < capacity) {
+            slots *= 2;
+        }
+        return slots;
+    }
+}
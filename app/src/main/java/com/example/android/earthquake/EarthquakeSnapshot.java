@@ -0,0 +1,208 @@
+package com.example.android.earthquake;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Binary copy of the last list shown, so it can be shown on launch before the database is opened
+ * or any JSON is parsed. The file starts with a header, then holds a record of fixed width per
+ * earthquake with its numbers and the indexes of its strings, and ends with a pool of the
+ * strings, so it is read through a memory mapped file without any parsing. The file is replaced
+ * atomically, a reader sees either the old or the new snapshot but never a partly written one
+ *
+ * <pre>
+ * header:  magic, version, key string, count, number of strings          5 ints
+ * record:  magnitude, time, updated, longitude, latitude, depth,        6 longs/doubles
+ *          id string, offset string or -1, primary location string,     4 ints
+ *          url string
+ * pool:    end offset of every string, then the UTF-8 bytes of all of them
+ * </pre>
+ */
+public final class EarthquakeSnapshot {
+
+    private static final String LOG_TAG = "EarthquakeSnapshot";
+    private static final int MAGIC = 0x45515348;// "EQSH"
+    // to be raised with every change of the format, older snapshots are then ignored
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final int RECORD_SIZE = 6 * 8 + 4 * 4;
+    // ints of strings in a record
+    private static final int STRINGS = 4;
+
+    /**
+     * create a private constructor so that no instance of the class is created
+     */
+    private EarthquakeSnapshot() {
+
+    }
+
+    /**
+     * write the earthquakes to the file with the key of the request they answer, the file is only
+     * replaced once the whole snapshot is on disk. Returns false if it could not be written
+     */
+    public static boolean write(File file,String key,EarthquakeTable earthquakes) {
+        int count = earthquakes.size();
+        // every distinct string is stored once
+        HashMap<String,Integer> indexes = new HashMap<>();
+        ArrayList<byte[]> strings = new ArrayList<>();
+        int[] records = new int[count * STRINGS];
+        int keyIndex = intern(key,indexes,strings);
+        int poolBytes = 0;
+        for(int row = 0; row < count; ++row) {
+            String offset = earthquakes.getLocationOffset(row);
+            // the locations are kept in parts, so the primary locations are stored once
+            records[row * STRINGS] = intern(earthquakes.getId(row),indexes,strings);
+            records[row * STRINGS + 1] = offset == null ? -1 : intern(offset,indexes,strings);
+            records[row * STRINGS + 2] = intern(earthquakes.getPrimaryLocation(row),indexes,
+                    strings);
+            records[row * STRINGS + 3] = intern(earthquakes.getUrl(row),indexes,strings);
+        }
+        for(byte[] string : strings) {
+            poolBytes += string.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE
+                + strings.size() * 4 + poolBytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(keyIndex).putInt(count).putInt(strings.size());
+        for(int row = 0; row < count; ++row) {
+            buffer.putDouble(earthquakes.getMagnitude(row))
+                    .putLong(earthquakes.getDateTime(row))
+                    .putLong(earthquakes.getUpdated(row))
+                    .putDouble(earthquakes.getLongitude(row))
+                    .putDouble(earthquakes.getLatitude(row))
+                    .putDouble(earthquakes.getDepth(row))
+                    .putInt(records[row * STRINGS])
+                    .putInt(records[row * STRINGS + 1])
+                    .putInt(records[row * STRINGS + 2])
+                    .putInt(records[row * STRINGS + 3]);
+        }
+        int end = 0;
+        for(byte[] string : strings) {
+            end += string.length;
+            buffer.putInt(end);
+        }
+        for(byte[] string : strings) {
+            buffer.put(string);
+        }
+        buffer.flip();
+
+        // write next to the snapshot and rename, which replaces it in one step
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            FileChannel channel = out.getChannel();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        catch (IOException e) {
+            Log.e(LOG_TAG,"Problem writing the snapshot",e);
+            temp.delete();
+            return false;
+        }
+        if(!temp.renameTo(file)) {
+            Log.e(LOG_TAG,"Problem replacing the snapshot");
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * read the snapshot if it answers the request with the given key, returns null if there is
+     * no snapshot, it was written for another request or by another version or it is damaged
+     */
+    public static EarthquakeTable read(File file,String key) {
+        if(!file.exists()) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+            if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION) {
+                Log.v(LOG_TAG,"Ignoring a snapshot of another version");
+                return null;
+            }
+            int keyIndex = buffer.getInt();
+            int count = buffer.getInt();
+            int stringCount = buffer.getInt();
+            int pool = HEADER_SIZE + count * RECORD_SIZE;
+            int poolData = pool + stringCount * 4;
+            if(count < 0 || count > buffer.limit() / RECORD_SIZE || stringCount < 0
+                    || poolData > buffer.limit()) {
+                Log.e(LOG_TAG,"Damaged snapshot");
+                return null;
+            }
+            String[] strings = new String[stringCount];
+            if(!key.equals(string(buffer,pool,poolData,keyIndex,strings))) {
+                return null;
+            }
+            EarthquakeTable earthquakes = new EarthquakeTable(count);
+            for(int row = 0; row < count; ++row) {
+                buffer.position(HEADER_SIZE + row * RECORD_SIZE);
+                double magnitude = buffer.getDouble();
+                long dateTime = buffer.getLong();
+                long updated = buffer.getLong();
+                double longitude = buffer.getDouble();
+                double latitude = buffer.getDouble();
+                double depth = buffer.getDouble();
+                String id = string(buffer,pool,poolData,buffer.getInt(),strings);
+                int offsetIndex = buffer.getInt();
+                String offset = offsetIndex < 0 ? null
+                        : string(buffer,pool,poolData,offsetIndex,strings);
+                String primaryLocation = string(buffer,pool,poolData,buffer.getInt(),strings);
+                String url = string(buffer,pool,poolData,buffer.getInt(),strings);
+                earthquakes.add(id,magnitude,offset,primaryLocation,dateTime,updated,url,
+                        longitude,latitude,depth);
+            }
+            return earthquakes;
+        }
+        catch (IOException | BufferUnderflowException | IllegalArgumentException
+                | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            Log.e(LOG_TAG,"Problem reading the snapshot",e);
+            return null;
+        }
+    }
+
+    /**
+     * get the index of the string in the pool, adding it if it is not there yet
+     */
+    private static int intern(String string,HashMap<String,Integer> indexes,
+                              ArrayList<byte[]> strings) {
+        Integer index = indexes.get(string);
+        if(index == null) {
+            index = strings.size();
+            indexes.put(string,index);
+            strings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        return index;
+    }
+
+    /**
+     * decode a string of the pool the first time it is needed, the buffer position is kept
+     */
+    private static String string(ByteBuffer buffer,int pool,int poolData,int index,
+                                 String[] strings) {
+        if(strings[index] == null) {
+            int start = index == 0 ? 0 : buffer.getInt(pool + (index - 1) * 4);
+            int end = buffer.getInt(pool + index * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(poolData + start);
+            slice.get(bytes);
+            strings[index] = new String(bytes,StandardCharsets.UTF_8);
+        }
+        return strings[index];
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.android.earthquake;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+
+/**
+ * SQLite database keeping the earthquakes fetched from USGS on the device, keyed by event id
+ * so that the list can be shown from disk on launch and when there is no internet. For every
+ * magnitude range that was fetched completely it also remembers the newest update time seen, so
+ * that later requests only need to ask USGS for the events changed since then, and when it was
+ * synced last so recently synced ranges are shown without asking USGS at all
+ */
+public class EarthquakeStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "earthquakes.db";
+    private static final int DATABASE_VERSION = 4;
+    // the oldest earthquakes are removed once the table grows beyond this
+    static final int MAX_STORED = 20000;
+
+    private static final String TABLE = "earthquakes";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_MAGNITUDE = "magnitude";
+    private static final String COLUMN_PLACE = "place";
+    private static final String COLUMN_TIME = "time";
+    private static final String COLUMN_UPDATED = "updated";
+    private static final String COLUMN_URL = "url";
+    // null when USGS gave no coordinates
+    private static final String COLUMN_LONGITUDE = "longitude";
+    private static final String COLUMN_LATITUDE = "latitude";
+    private static final String COLUMN_DEPTH = "depth";
+
+    private static final String SYNC_TABLE = "sync_state";
+    private static final String COLUMN_RANGE = "range";
+    private static final String COLUMN_SYNCED_AT = "synced_at";
+
+    // shared by the screen and the background sync so they never write at the same time
+    private static EarthquakeStore sInstance;
+
+    public EarthquakeStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * get the database of the app, it is opened once and stays open while the process lives
+     */
+    public static synchronized EarthquakeStore getInstance(Context context) {
+        if(sInstance == null) {
+            sInstance = new EarthquakeStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * create the tables and the indexes used for sorting and filtering
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY NOT NULL, "
+                + COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                + COLUMN_PLACE + " TEXT NOT NULL, "
+                + COLUMN_TIME + " INTEGER NOT NULL, "
+                + COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + COLUMN_URL + " TEXT NOT NULL, "
+                + COLUMN_LONGITUDE + " REAL, "
+                + COLUMN_LATITUDE + " REAL, "
+                + COLUMN_DEPTH + " REAL)");
+        db.execSQL("CREATE INDEX " + TABLE + "_" + COLUMN_TIME + " ON "
+                + TABLE + " (" + COLUMN_TIME + ")");
+        db.execSQL("CREATE INDEX " + TABLE + "_" + COLUMN_MAGNITUDE + " ON "
+                + TABLE + " (" + COLUMN_MAGNITUDE + ")");
+        db.execSQL("CREATE TABLE " + SYNC_TABLE + " ("
+                + COLUMN_RANGE + " TEXT PRIMARY KEY NOT NULL, "
+                + COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + COLUMN_SYNCED_AT + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * the tables only cache data from USGS, so they are simply created again
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + SYNC_TABLE);
+        onCreate(db);
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        onUpgrade(db, oldVersion, newVersion);
+    }
+
+    /**
+     * return the stored earthquakes between the given magnitudes which happened after startTime
+     * in the order used by the USGS orderby parameter, at most limit of them
+     */
+    public EarthquakeTable queryEarthquakes(int minMag,int maxMag,long startTime,
+                                            String orderBy,int limit) {
+        Cursor cursor = getReadableDatabase().query(TABLE,
+                new String[]{COLUMN_ID, COLUMN_MAGNITUDE, COLUMN_PLACE, COLUMN_TIME,
+                        COLUMN_UPDATED, COLUMN_URL, COLUMN_LONGITUDE, COLUMN_LATITUDE,
+                        COLUMN_DEPTH},
+                rangeSelection(),
+                rangeArguments(minMag, maxMag, startTime),
+                null, null, orderClause(orderBy), String.valueOf(limit));
+        try {
+            EarthquakeTable earthquakes = new EarthquakeTable(cursor.getCount());
+            while(cursor.moveToNext()) {
+                earthquakes.add(cursor.getString(0), cursor.getDouble(1), cursor.getString(2),
+                        cursor.getLong(3), cursor.getLong(4), cursor.getString(5),
+                        getCoordinate(cursor, 6), getCoordinate(cursor, 7),
+                        getCoordinate(cursor, 8));
+            }
+            return earthquakes;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * return the newest update time seen for the magnitude range, or -1 if the range was never
+     * fetched completely and has to be fetched in full
+     */
+    public long getSyncedUpdate(int minMag,int maxMag) {
+        Cursor cursor = getReadableDatabase().query(SYNC_TABLE, new String[]{COLUMN_UPDATED},
+                COLUMN_RANGE + " = ?", new String[]{rangeKey(minMag, maxMag)},
+                null, null, null);
+        try {
+            return cursor.moveToNext() ? cursor.getLong(0) : -1;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * return when the magnitude range was last synced with USGS in milliseconds, or -1 if it
+     * never was
+     */
+    public long getSyncedAt(int minMag,int maxMag) {
+        Cursor cursor = getReadableDatabase().query(SYNC_TABLE, new String[]{COLUMN_SYNCED_AT},
+                COLUMN_RANGE + " = ?", new String[]{rangeKey(minMag, maxMag)},
+                null, null, null);
+        try {
+            return cursor.moveToNext() ? cursor.getLong(0) : -1;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * save the result of a full request for the magnitude range. If the result is complete (it
+     * was not cut off by the request limit) it replaces everything stored for the range, so
+     * events removed by USGS go away too, and later requests for the range can be incremental.
+     * requestTime is used as the sync point when the result has no events. It is remembered as
+     * the time of the sync either way, so a range with more events than one request returns is
+     * fresh as well, but an incomplete result does not make the range incremental
+     */
+    public void replaceEarthquakes(int minMag,int maxMag,long startTime,
+                                   EarthquakeTable earthquakes,boolean complete,
+                                   long requestTime) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if(complete) {
+                db.delete(TABLE, rangeSelection(), rangeArguments(minMag, maxMag, startTime));
+            }
+            long newest = insertEarthquakes(db, earthquakes);
+            if(complete) {
+                setSyncedUpdate(db, minMag, maxMag, newest > 0 ? newest : requestTime,
+                        requestTime);
+            }
+            else{
+                setSyncedAt(db, minMag, maxMag, requestTime);
+            }
+            trim(db);
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * merge the events changed since the last sync of the magnitude range, new and revised events
+     * replace the stored ones with the same id and deleted events are removed. The changes are
+     * of every magnitude: a revision moving a stored event out of the range still replaces it so
+     * it leaves the range, other events outside the range are skipped. requestTime is remembered
+     * as the time of the sync
+     */
+    public void mergeEarthquakes(int minMag,int maxMag,EarthquakeTable changed,
+                                 ArrayList<String> deletedIds,long requestTime) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long newest = insertChanges(db, minMag, maxMag, changed);
+            for(String id : deletedIds) {
+                db.delete(TABLE, COLUMN_ID + " = ?", new String[]{id});
+            }
+            setSyncedUpdate(db, minMag, maxMag,
+                    Math.max(newest, getSyncedUpdate(minMag, maxMag)), requestTime);
+            trim(db);
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * insert the changed events in the range or replace the stored ones with the same id at any
+     * magnitude, returns the newest update time among all of them since every change was seen
+     */
+    private static long insertChanges(SQLiteDatabase db,int minMag,int maxMag,
+                                      EarthquakeTable changed) {
+        long newest = 0;
+        SQLiteStatement insert = compileInsert(db);
+        SQLiteStatement stored = db.compileStatement("SELECT COUNT(*) FROM " + TABLE + " WHERE "
+                + COLUMN_ID + " = ?");
+        try {
+            for(int row = 0; row < changed.size(); ++row) {
+                newest = Math.max(newest, changed.getUpdated(row));
+                if(!inRange(changed.getMagnitude(row), minMag, maxMag)) {
+                    stored.bindString(1, changed.getId(row));
+                    if(stored.simpleQueryForLong() == 0) {
+                        continue;
+                    }
+                }
+                bindEarthquake(insert, changed, row);
+                insert.executeInsert();
+            }
+        }
+        finally {
+            insert.close();
+            stored.close();
+        }
+        return newest;
+    }
+
+    /**
+     * return true if the magnitude is in the range, the bounds are included as in the queries
+     */
+    static boolean inRange(double magnitude,int minMag,int maxMag) {
+        return magnitude >= minMag && magnitude <= maxMag;
+    }
+
+    /**
+     * insert the earthquakes or replace the stored ones with the same id, returns the newest
+     * update time among them
+     */
+    private static long insertEarthquakes(SQLiteDatabase db,EarthquakeTable earthquakes) {
+        long newest = 0;
+        SQLiteStatement statement = compileInsert(db);
+        try {
+            for(int row = 0; row < earthquakes.size(); ++row) {
+                bindEarthquake(statement, earthquakes, row);
+                statement.executeInsert();
+                newest = Math.max(newest, earthquakes.getUpdated(row));
+            }
+        }
+        finally {
+            statement.close();
+        }
+        return newest;
+    }
+
+    // the place is put together from the offset, null if there is none, and the primary
+    // location by SQLite, so no string is made for it
+    private static SQLiteStatement compileInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " ("
+                + COLUMN_ID + ", " + COLUMN_MAGNITUDE + ", " + COLUMN_PLACE + ", "
+                + COLUMN_TIME + ", " + COLUMN_UPDATED + ", " + COLUMN_URL + ", "
+                + COLUMN_LONGITUDE + ", " + COLUMN_LATITUDE + ", " + COLUMN_DEPTH
+                + ") VALUES (?, ?, COALESCE(? || ',', '') || ?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    private static void bindEarthquake(SQLiteStatement statement,EarthquakeTable earthquakes,
+                                       int row) {
+        statement.bindString(1, earthquakes.getId(row));
+        statement.bindDouble(2, earthquakes.getMagnitude(row));
+        String offset = earthquakes.getLocationOffset(row);
+        if(offset == null) {
+            statement.bindNull(3);
+        }
+        else{
+            statement.bindString(3, offset);
+        }
+        statement.bindString(4, earthquakes.getPrimaryLocation(row));
+        statement.bindLong(5, earthquakes.getDateTime(row));
+        statement.bindLong(6, earthquakes.getUpdated(row));
+        statement.bindString(7, earthquakes.getUrl(row));
+        bindCoordinate(statement, 8, earthquakes.getLongitude(row));
+        bindCoordinate(statement, 9, earthquakes.getLatitude(row));
+        bindCoordinate(statement, 10, earthquakes.getDepth(row));
+    }
+
+    // a missing coordinate is NaN in the tables and null in the database
+    private static void bindCoordinate(SQLiteStatement statement,int index,double value) {
+        if(Double.isNaN(value)) {
+            statement.bindNull(index);
+        }
+        else{
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static double getCoordinate(Cursor cursor,int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+
+    /**
+     * only keep the newest earthquakes so the database does not keep growing, if any were removed
+     * the stored ranges are no longer complete and have to be fetched in full again
+     */
+    private static void trim(SQLiteDatabase db) {
+        SQLiteStatement statement = db.compileStatement("DELETE FROM " + TABLE + " WHERE "
+                + COLUMN_ID + " NOT IN (SELECT " + COLUMN_ID + " FROM " + TABLE + " ORDER BY "
+                + COLUMN_TIME + " DESC LIMIT " + MAX_STORED + ")");
+        try {
+            if(statement.executeUpdateDelete() > 0) {
+                db.delete(SYNC_TABLE, null, null);
+            }
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private static void setSyncedUpdate(SQLiteDatabase db,int minMag,int maxMag,long updated,
+                                        long syncedAt) {
+        db.execSQL("INSERT OR REPLACE INTO " + SYNC_TABLE + " (" + COLUMN_RANGE + ", "
+                        + COLUMN_UPDATED + ", " + COLUMN_SYNCED_AT + ") VALUES (?, ?, ?)",
+                new Object[]{rangeKey(minMag, maxMag), updated, syncedAt});
+    }
+
+    /**
+     * remember when the range was synced and keep its update marker, a range without one gets -1
+     * so it is still fetched in full
+     */
+    private static void setSyncedAt(SQLiteDatabase db,int minMag,int maxMag,long syncedAt) {
+        db.execSQL("INSERT OR IGNORE INTO " + SYNC_TABLE + " (" + COLUMN_RANGE + ", "
+                        + COLUMN_UPDATED + ", " + COLUMN_SYNCED_AT + ") VALUES (?, -1, ?)",
+                new Object[]{rangeKey(minMag, maxMag), syncedAt});
+        db.execSQL("UPDATE " + SYNC_TABLE + " SET " + COLUMN_SYNCED_AT + " = ? WHERE "
+                + COLUMN_RANGE + " = ?", new Object[]{syncedAt, rangeKey(minMag, maxMag)});
+    }
+
+    private static String rangeKey(int minMag,int maxMag) {
+        return minMag + "-" + maxMag;
+    }
+
+    private static String rangeSelection() {
+        return COLUMN_MAGNITUDE + " >= ? AND " + COLUMN_MAGNITUDE + " <= ? AND "
+                + COLUMN_TIME + " >= ?";
+    }
+
+    private static String[] rangeArguments(int minMag,int maxMag,long startTime) {
+        return new String[]{String.valueOf(minMag), String.valueOf(maxMag),
+                String.valueOf(startTime)};
+    }
+
+    /**
+     * helper function to convert the USGS orderby parameter into an ORDER BY clause
+     */
+    private static String orderClause(String orderBy) {
+        switch (orderBy) {
+            case "time-asc":
+                return COLUMN_TIME + " ASC";
+            case "magnitude":
+                return COLUMN_MAGNITUDE + " DESC";
+            case "magnitude-asc":
+                return COLUMN_MAGNITUDE + " ASC";
+        }
+        return COLUMN_TIME + " DESC";
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.earthquake;
+
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Keeps the earthquakes saved in {@link EarthquakeStore} up to date with USGS. Used by the
+ * model when the list is shown and by {@link EarthquakeSyncWorker} in the background
+ */
+public final class EarthquakeSync {
+
+    private static final String LOG_TAG = "EarthquakeSync";
+    static final String QUERY_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+    static final String COUNT_URL = "https://earthquake.usgs.gov/fdsnws/event/1/count";
+    // maximum number of earthquakes requested at once, any more are paged
+    static final int LIMIT = 3000;
+    // earthquakes of the last 30 days are shown
+    static final long WINDOW = 30L * 24 * 60 * 60 * 1000;
+    // the start of the window is rounded down to a multiple of this, midnight UTC
+    static final long WINDOW_STEP = 24L * 60 * 60 * 1000;
+    // a range synced less than this many milliseconds ago is shown from the database only
+    static final long FRESHNESS = 30L * 60 * 1000;
+
+    /**
+     * create a private constructor so that no instance of the class is created
+     */
+    private EarthquakeSync() {
+
+    }
+
+    /**
+     * get the start of the window of a request made at now, WINDOW rounded up to midnight UTC so
+     * the url of a range stays the same all day and the HTTP cache can revalidate its response
+     * instead of downloading it again
+     */
+    static long windowStart(long now) {
+        return (now - WINDOW) / WINDOW_STEP * WINDOW_STEP;
+    }
+
+    /**
+     * get the query parameters selecting the magnitude range from startTime on
+     */
+    static String rangeParameters(int minMag,int maxMag,long startTime) {
+        return magnitudeParameters(minMag,maxMag)+"&starttime="+formatTime(startTime);
+    }
+
+    /**
+     * get the query parameters selecting the magnitude range at any time
+     */
+    static String magnitudeParameters(int minMag,int maxMag) {
+        return "minmagnitude="+minMag+ "&maxmagnitude="+maxMag;
+    }
+
+    /**
+     * bring the saved earthquakes of the range up to date, incrementally if the range was synced
+     * before and in full otherwise. Returns false if the request failed or was cancelled
+     */
+    static boolean sync(EarthquakeStore store,int minMag,int maxMag,FetchTask task) {
+        long requestTime = System.currentTimeMillis();
+        long startTime = windowStart(requestTime);
+        String url = QUERY_URL+"?format=geojson&"+rangeParameters(minMag,maxMag,startTime)
+                +"&limit="+LIMIT;
+        long syncedUpdate = store.getSyncedUpdate(minMag,maxMag);
+        if(syncedUpdate >= 0
+                && syncChanges(store,minMag,maxMag,startTime,syncedUpdate,task,requestTime,null)) {
+            return true;
+        }
+        if(task != null && task.isCancelled()) {
+            return false;
+        }
+        EarthquakeTable earthquakes =
+                QueryUtils.fetchEarthquakeData(url+"&orderby=time",null,null,task);
+        if(earthquakes == null || (task != null && task.isCancelled())) {
+            return false;
+        }
+        long start = PipelineMetrics.start();
+        store.replaceEarthquakes(minMag,maxMag,startTime,earthquakes,earthquakes.size() < LIMIT,
+                requestTime);
+        PipelineMetrics.record(PipelineMetrics.STORE,start);
+        return true;
+    }
+
+    /**
+     * ask USGS only for the events updated after the last sync, including deleted ones, and merge
+     * them into the database. The changes are asked for at every magnitude, since a revision
+     * moving an event out of the range would not match a query of the range and the stale event
+     * would stay. Returns false if the request failed or if there are too many changes, then the
+     * range is fetched in full instead. If a histogram is given the changes are applied to it as
+     * well
+     */
+    static boolean syncChanges(EarthquakeStore store,int minMag,int maxMag,long startTime,
+                               long syncedUpdate,FetchTask task,long requestTime,
+                               EarthquakeHistogram histogram) {
+        ArrayList<String> deletedIds = new ArrayList<>();
+        EarthquakeTable changed = QueryUtils.fetchEarthquakeData(changesUrl(startTime,syncedUpdate),
+                null,deletedIds,task);
+        if(changed == null || (task != null && task.isCancelled())
+                || changed.size() + deletedIds.size() >= LIMIT) {
+            return false;
+        }
+        Log.v(LOG_TAG,"Changes since last sync: " + changed.size() + " updated, "
+                + deletedIds.size() + " deleted");
+        long start = PipelineMetrics.start();
+        store.mergeEarthquakes(minMag,maxMag,changed,deletedIds,requestTime);
+        PipelineMetrics.record(PipelineMetrics.STORE,start);
+        if(histogram != null) {
+            // events revised out of the range are no longer counted
+            for(int row = 0; row < changed.size(); ++row) {
+                if(EarthquakeStore.inRange(changed.getMagnitude(row),minMag,maxMag)) {
+                    histogram.put(changed.getId(row),changed.getMagnitude(row),
+                            changed.getDateTime(row));
+                }
+                else{
+                    histogram.remove(changed.getId(row));
+                }
+            }
+            for(String id : deletedIds) {
+                histogram.remove(id);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * get the url of the events of any magnitude from startTime on updated after syncedUpdate
+     */
+    static String changesUrl(long startTime,long syncedUpdate) {
+        return QUERY_URL+"?format=geojson&starttime="+formatTime(startTime)+"&limit="+LIMIT
+                +"&orderby=time&includedeleted=true&updatedafter="+formatTime(syncedUpdate);
+    }
+
+    /**
+     * format milliseconds as the UTC ISO 8601 time used by the USGS query parameters
+     */
+    static String formatTime(long milliseconds) {
+        SimpleDateFormat simpleDateFormat =
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return simpleDateFormat.format(new Date(milliseconds));
+    }
+}
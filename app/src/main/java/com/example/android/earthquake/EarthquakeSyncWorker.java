@@ -0,0 +1,78 @@
+package com.example.android.earthquake;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncs the saved earthquakes of the magnitude range chosen in the settings in the background,
+ * only on unmetered networks and when the battery is not low, so opening the app can show
+ * them from the database without waiting for USGS
+ */
+public class EarthquakeSyncWorker extends Worker {
+
+    private static final String LOG_TAG = "EarthquakeSyncWorker";
+    private static final String WORK_NAME = "earthquake-sync";
+    // how often the range is synced, WorkManager runs periodic work at most every 15 minutes
+    private static final long SYNC_INTERVAL_MINUTES = EarthquakeSync.FRESHNESS / 60000;
+    // first delay before a failed sync is tried again, it doubles with every failure
+    private static final long BACKOFF_MINUTES = 5;
+
+    // cancelled when WorkManager stops the work, for example when the network is lost
+    private final FetchTask mTask = new FetchTask(WORK_NAME,0,null);
+
+    public EarthquakeSyncWorker(@NonNull Context context,@NonNull WorkerParameters parameters) {
+        super(context,parameters);
+    }
+
+    /**
+     * schedule the sync unless it already is, calling it again keeps the existing schedule
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(EarthquakeSyncWorker.class,
+                SYNC_INTERVAL_MINUTES,TimeUnit.MINUTES)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL,BACKOFF_MINUTES,TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP,request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        SharedPreferences sharedPreferences = context.getSharedPreferences(
+                context.getString(R.string.settingsFile),Context.MODE_PRIVATE);
+        int minMag = sharedPreferences.getInt(context.getString(R.string.minimumMagnitude),0);
+        int maxMag = sharedPreferences.getInt(context.getString(R.string.maximumMagnitude),0);
+        if(EarthquakeSync.sync(EarthquakeStore.getInstance(context),minMag,maxMag,mTask)) {
+            Log.v(LOG_TAG,"Synced magnitudes " + minMag + " to " + maxMag);
+            return Result.success();
+        }
+        // tried again after the back-off delay
+        return Result.retry();
+    }
+
+    @Override
+    public void onStopped() {
+        super.onStopped();
+        mTask.cancel();
+    }
+}
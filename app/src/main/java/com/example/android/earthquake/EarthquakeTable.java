@@ -0,0 +1,337 @@
+package com.example.android.earthquake;
+
+import java.util.Arrays;
+
+/**
+ * Column wise list of earthquakes, every field is kept in its own array instead of one
+ * {@link Earthquake} object per event, so magnitudes and times are stored as primitives without
+ * an object header or a boxed Long for each earthquake.
+ * A table is filled with {@link #add} on one thread, {@link #snapshot()} returns a read only
+ * view of the rows added so far which shares the arrays and can be handed to other threads while
+ * rows keep being added to the table.
+ * The texts shown in the list are only formatted for the tables which are shown, by
+ * {@link #format()} before a list is posted, so that binding a row on the UI thread only has to
+ * set them while tables which are never shown are not formatted at all.
+ * Locations are split into their offset and their region at the comma when a row is added, the
+ * regions repeat across the events so they are kept once in a {@link StringPool} shared by all
+ * tables. A location without a comma is free text which rarely repeats, it is kept as it is.
+ * Urls of the USGS event page of the event are not kept at all but built again from the id
+ */
+public class EarthquakeTable {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    // urls starting with this and ending with the event id are built again when asked for
+    static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+    // primary locations of every table, like " Alaska"
+    private static final StringPool REGIONS = new StringPool();
+    // the formats are not thread safe, every thread formatting tables gets its own
+    private static final ThreadLocal<EarthquakeFormatter> FORMATTERS =
+            new ThreadLocal<EarthquakeFormatter>() {
+                @Override
+                protected EarthquakeFormatter initialValue() {
+                    return new EarthquakeFormatter();
+                }
+            };
+
+    // shared by a table and its snapshots, tells if two tables were filled by the same source
+    private final Object mSource;
+    private final boolean mReadOnly;
+    private String[] mIds;// USGS event ids
+    private double[] mMagnitudes;// magnitudes of the earthquakes
+    private long[] mDateTimes;// date and time in milliseconds
+    private long[] mUpdated;// time of the last update in milliseconds
+    // urls to view the additional details of the earthquakes, null for event page urls
+    private String[] mUrls;
+    private double[] mLongitudes;// longitudes in degrees, NaN if unknown
+    private double[] mLatitudes;// latitudes in degrees, NaN if unknown
+    private double[] mDepths;// depths in km, NaN if unknown
+    // magnitudes formatted with one digit after 0, dates and times, null until formatted
+    private String[] mMagnitudeTexts;
+    // offset part of the locations, the whole location if it has no comma
+    private String[] mOffsets;
+    private int[] mRegions;// primary part of the locations in REGIONS, -1 without a comma
+    private String[] mDates;
+    private String[] mTimes;
+    private byte[] mColorIndexes;// magnitude circle colors, see EarthquakeFormatter.colorIndex
+    private int mSize;
+
+    // create an empty table
+    public EarthquakeTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // create an empty table with room for the given number of earthquakes
+    public EarthquakeTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mSource = new Object();
+        mReadOnly = false;
+        mIds = new String[capacity];
+        mMagnitudes = new double[capacity];
+        mDateTimes = new long[capacity];
+        mUpdated = new long[capacity];
+        mUrls = new String[capacity];
+        mLongitudes = new double[capacity];
+        mLatitudes = new double[capacity];
+        mDepths = new double[capacity];
+        mMagnitudeTexts = new String[capacity];
+        mOffsets = new String[capacity];
+        mRegions = new int[capacity];
+        mDates = new String[capacity];
+        mTimes = new String[capacity];
+        mColorIndexes = new byte[capacity];
+    }
+
+    // create a read only view of the first size rows of the given table
+    private EarthquakeTable(EarthquakeTable table) {
+        mSource = table.mSource;
+        mReadOnly = true;
+        mIds = table.mIds;
+        mMagnitudes = table.mMagnitudes;
+        mDateTimes = table.mDateTimes;
+        mUpdated = table.mUpdated;
+        mUrls = table.mUrls;
+        mLongitudes = table.mLongitudes;
+        mLatitudes = table.mLatitudes;
+        mDepths = table.mDepths;
+        mMagnitudeTexts = table.mMagnitudeTexts;
+        mOffsets = table.mOffsets;
+        mRegions = table.mRegions;
+        mDates = table.mDates;
+        mTimes = table.mTimes;
+        mColorIndexes = table.mColorIndexes;
+        mSize = table.mSize;
+    }
+
+    /**
+     * add an earthquake whose coordinates are not known at the end of the table
+     */
+    public void add(String id,double magnitude,String location,long dateTime,long updated,
+                    String url) {
+        add(id, magnitude, location, dateTime, updated, url, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * add an earthquake at the end of the table, its texts are formatted once it is shown
+     */
+    public void add(String id,double magnitude,String location,long dateTime,long updated,
+                    String url,double longitude,double latitude,double depth) {
+        int comma = location.indexOf(',');
+        add(id, magnitude, comma < 0 ? null : location.substring(0,comma),
+                comma < 0 ? location : location.substring(comma + 1), dateTime, updated, url,
+                longitude, latitude, depth);
+    }
+
+    /**
+     * add an earthquake whose location was split at its first comma already, into the offset
+     * before it, null if there is no comma, and the primary location
+     */
+    void add(String id,double magnitude,String offset,String primaryLocation,long dateTime,
+             long updated,String url,double longitude,double latitude,double depth) {
+        int row = addRow(id, magnitude, dateTime, updated, longitude, latitude, depth);
+        // the url is left out if it can be built from the id
+        mUrls[row] = url.length() == EVENT_PAGE_URL.length() + id.length()
+                && url.startsWith(EVENT_PAGE_URL) && url.endsWith(id) ? null : url;
+        if(offset == null) {
+            mOffsets[row] = primaryLocation;
+            mRegions[row] = -1;
+        }
+        else{
+            mOffsets[row] = offset;
+            mRegions[row] = REGIONS.intern(primaryLocation);
+        }
+        mColorIndexes[row] = (byte)EarthquakeFormatter.colorIndex(magnitude);
+    }
+
+    /**
+     * add a row of another table at the end of this one, the texts already formatted are reused
+     */
+    public void add(EarthquakeTable table,int row) {
+        int newRow = addRow(table.mIds[row], table.mMagnitudes[row], table.mDateTimes[row],
+                table.mUpdated[row], table.mLongitudes[row], table.mLatitudes[row],
+                table.mDepths[row]);
+        mUrls[newRow] = table.mUrls[row];
+        mMagnitudeTexts[newRow] = table.mMagnitudeTexts[row];
+        mOffsets[newRow] = table.mOffsets[row];
+        mRegions[newRow] = table.mRegions[row];
+        mDates[newRow] = table.mDates[row];
+        mTimes[newRow] = table.mTimes[row];
+        mColorIndexes[newRow] = table.mColorIndexes[row];
+    }
+
+    /**
+     * store the fields of a new row which are not derived from others and return its position
+     */
+    private int addRow(String id,double magnitude,long dateTime,long updated,double longitude,
+                       double latitude,double depth) {
+        if(mReadOnly) {
+            throw new IllegalStateException("Snapshots of a table are read only");
+        }
+        if(mSize == mIds.length) {
+            // grow into new arrays, snapshots keep using the old ones which no longer change
+            int capacity = mSize + (mSize >> 1) + 1;
+            mIds = Arrays.copyOf(mIds, capacity);
+            mMagnitudes = Arrays.copyOf(mMagnitudes, capacity);
+            mDateTimes = Arrays.copyOf(mDateTimes, capacity);
+            mUpdated = Arrays.copyOf(mUpdated, capacity);
+            mUrls = Arrays.copyOf(mUrls, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mDepths = Arrays.copyOf(mDepths, capacity);
+            mMagnitudeTexts = Arrays.copyOf(mMagnitudeTexts, capacity);
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mRegions = Arrays.copyOf(mRegions, capacity);
+            mDates = Arrays.copyOf(mDates, capacity);
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mColorIndexes = Arrays.copyOf(mColorIndexes, capacity);
+        }
+        mIds[mSize] = id;
+        mMagnitudes[mSize] = magnitude;
+        mDateTimes[mSize] = dateTime;
+        mUpdated[mSize] = updated;
+        mLongitudes[mSize] = longitude;
+        mLatitudes[mSize] = latitude;
+        mDepths[mSize] = depth;
+        return mSize++;
+    }
+
+    /**
+     * format the texts shown in the list for the rows which have none yet, with the default
+     * locale and time zone. Called for the tables about to be shown, also on read only views
+     * since the texts only cache what the other fields hold. Rows copied from a formatted table
+     * already have their texts
+     */
+    public void format() {
+        EarthquakeFormatter formatter = null;
+        for(int row = 0; row < mSize; ++row) {
+            if(mMagnitudeTexts[row] != null) {
+                continue;
+            }
+            if(formatter == null) {
+                formatter = FORMATTERS.get();
+            }
+            mMagnitudeTexts[row] = formatter.formatMagnitude(mMagnitudes[row]);
+            mDates[row] = formatter.formatDate(mDateTimes[row]);
+            mTimes[row] = formatter.formatTime(mDateTimes[row]);
+        }
+    }
+
+    /**
+     * return a read only view of the rows added so far, it does not copy any data
+     */
+    public EarthquakeTable snapshot() {
+        return new EarthquakeTable(this);
+    }
+
+    /**
+     * check if this table holds the rows of the given table followed by zero or more new ones,
+     * that is both come from the same table and this one was taken later
+     */
+    public boolean continues(EarthquakeTable earlier) {
+        return earlier.mSource == mSource && earlier.mSize <= mSize;
+    }
+
+    // get the number of earthquakes
+    public int size() {
+        return mSize;
+    }
+
+    // get the event id of the earthquake in the given row
+    public String getId(int row) {
+        return mIds[row];
+    }
+
+    // get the magnitude of the earthquake in the given row
+    public double getMagnitude(int row) {
+        return mMagnitudes[row];
+    }
+
+    /**
+     * get the location of the earthquake in the given row, it is put together from its offset
+     * and region so a new string is made on every call. Use {@link #getLocationOffset} and
+     * {@link #getPrimaryLocation} instead where the parts will do
+     */
+    public String getLocation(int row) {
+        return mRegions[row] < 0 ? mOffsets[row]
+                : mOffsets[row] + "," + REGIONS.get(mRegions[row]);
+    }
+
+    // get the number of milliseconds of the earthquake in the given row
+    public long getDateTime(int row) {
+        return mDateTimes[row];
+    }
+
+    // get the milliseconds of the last update of the earthquake in the given row
+    public long getUpdated(int row) {
+        return mUpdated[row];
+    }
+
+    /**
+     * get the url of the earthquake in the given row, event page urls are built from the id
+     */
+    public String getUrl(int row) {
+        return mUrls[row] == null ? EVENT_PAGE_URL + mIds[row] : mUrls[row];
+    }
+
+    // get the longitude in degrees of the earthquake in the given row, NaN if unknown
+    public double getLongitude(int row) {
+        return mLongitudes[row];
+    }
+
+    // get the latitude in degrees of the earthquake in the given row, NaN if unknown
+    public double getLatitude(int row) {
+        return mLatitudes[row];
+    }
+
+    // get the depth in km of the earthquake in the given row, NaN if unknown
+    public double getDepth(int row) {
+        return mDepths[row];
+    }
+
+    // get the formatted magnitude of the earthquake in the given row, null until formatted
+    public String getMagnitudeText(int row) {
+        return mMagnitudeTexts[row];
+    }
+
+    // get the offset part of the location of the earthquake in the given row
+    public String getOffset(int row) {
+        return mRegions[row] < 0 ? EarthquakeFormatter.NEAR_THE : mOffsets[row];
+    }
+
+    /**
+     * get the part of the location before the comma, null if it has none. The location is this,
+     * a comma and the primary location
+     */
+    public String getLocationOffset(int row) {
+        return mRegions[row] < 0 ? null : mOffsets[row];
+    }
+
+    // get the primary location of the earthquake in the given row, the whole one without a comma
+    public String getPrimaryLocation(int row) {
+        return mRegions[row] < 0 ? mOffsets[row] : REGIONS.get(mRegions[row]);
+    }
+
+    /**
+     * check if the earthquakes in the rows of both tables have the same location, without
+     * putting the locations together
+     */
+    public boolean hasSameLocation(int row,EarthquakeTable other,int otherRow) {
+        // regions come from the same pool, so equal ones have the same number
+        return mRegions[row] == other.mRegions[otherRow]
+                && mOffsets[row].equals(other.mOffsets[otherRow]);
+    }
+
+    // get the formatted date of the earthquake in the given row
+    public String getDate(int row) {
+        return mDates[row];
+    }
+
+    // get the formatted time of the earthquake in the given row
+    public String getTime(int row) {
+        return mTimes[row];
+    }
+
+    // get the index of the magnitude circle color of the earthquake in the given row
+    public int getColorIndex(int row) {
+        return mColorIndexes[row];
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.earthquake;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the requests of one screen one after the other on a shared executor, only the newest
+ * request matters: submitting a request cancels the older ones, a request that has not started
+ * yet is skipped when a newer one replaces it and submitting the same query as the newest
+ * request returns that request instead of making another one. A request replacing a cancelled
+ * one waits SETTLE_DELAY before it starts, so while the query keeps changing only the last one
+ * reaches the network. Every request is numbered so the results of an older one can be told
+ * apart and dropped
+ */
+public class FetchQueue {
+
+    // how long a request waits for a newer one after it replaced a cancelled request
+    static final long SETTLE_DELAY = 50;// milliseconds
+
+    /**
+     * the work of a request, run on a background thread
+     */
+    public interface Job {
+        void run(FetchTask task);
+    }
+
+    private final Executor mExecutor;
+    // guarded by this
+    private FetchTask mRunning;
+    private FetchTask mPending;
+    private int mGeneration;
+
+    public FetchQueue(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * submit a request for the query with the given key, if the newest request has the same key
+     * and was not cancelled it is returned and the job is not run
+     */
+    public synchronized FetchTask submit(String key,Job job) {
+        FetchTask newest = mPending != null ? mPending : mRunning;
+        if(newest != null && !newest.isCancelled() && newest.getKey().equals(key)) {
+            return newest;
+        }
+        if(mPending != null) {
+            mPending.cancel();
+        }
+        if(mRunning != null) {
+            mRunning.cancel();
+        }
+        FetchTask task = new FetchTask(key,++mGeneration,job);
+        if(mRunning == null) {
+            start(task,false);
+        }
+        else{
+            // starts once the cancelled request gave up its connection
+            mPending = task;
+        }
+        return task;
+    }
+
+    /**
+     * check if the task is the newest request, only its results should be shown
+     */
+    public synchronized boolean isCurrent(FetchTask task) {
+        return task.getGeneration() == mGeneration && !task.isCancelled();
+    }
+
+    /**
+     * check if no request is running or waiting to run
+     */
+    public synchronized boolean isIdle() {
+        return mRunning == null && mPending == null;
+    }
+
+    /**
+     * cancel every request, for example when the screen is closed
+     */
+    public synchronized void cancelAll() {
+        if(mPending != null) {
+            mPending.cancel();
+            mPending = null;
+        }
+        if(mRunning != null) {
+            mRunning.cancel();
+        }
+        ++mGeneration;
+    }
+
+    private void start(FetchTask task,boolean settle) {
+        mRunning = task;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // a newer request submitted meanwhile cancels this one before it is made
+                    if(settle && task.awaitCancel(SETTLE_DELAY)) {
+                        return;
+                    }
+                    task.run();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    finished();
+                }
+            }
+        });
+    }
+
+    private synchronized void finished() {
+        mRunning = null;
+        if(mPending != null) {
+            FetchTask next = mPending;
+            mPending = null;
+            start(next,true);
+        }
+    }
+}
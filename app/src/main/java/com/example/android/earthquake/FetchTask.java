@@ -0,0 +1,169 @@
+package com.example.android.earthquake;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+
+/**
+ * A request submitted to a {@link FetchQueue}. It knows the connection it is reading from so
+ * cancelling it aborts the request instead of waiting for the whole response
+ */
+public class FetchTask {
+
+    // why the last request made for the task failed
+    public static final int FAILURE_NONE = 0;
+    public static final int FAILURE_NETWORK = 1;// no connection, timed out or broke off
+    public static final int FAILURE_SERVER = 2;// USGS answered with an error
+    public static final int FAILURE_TOO_LARGE = 3;// the response was over the size limit
+    public static final int FAILURE_MALFORMED = 4;// the response could not be parsed
+
+    private final String mKey;
+    // number of the submission, a larger one is a newer request
+    private final int mGeneration;
+    private final FetchQueue.Job mJob;
+    private volatile boolean mCancelled;
+    // connection currently read from, guarded by this
+    private HttpURLConnection mConnection;
+    // tasks of requests made for this one at the same time, guarded by this
+    private ArrayList<FetchTask> mForks;
+    // run once the task is cancelled, guarded by this
+    private ArrayList<Runnable> mCancelListeners;
+    private volatile int mFailure = FAILURE_NONE;
+
+    FetchTask(String key,int generation,FetchQueue.Job job) {
+        mKey = key;
+        mGeneration = generation;
+        mJob = job;
+    }
+
+    // get the key identifying the query of the task
+    public String getKey() {
+        return mKey;
+    }
+
+    // get the generation number the task was submitted with
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    // get the reason the last request of the task failed, FAILURE_NONE if it did not
+    public int getFailure() {
+        return mFailure;
+    }
+
+    void setFailure(int failure) {
+        mFailure = failure;
+    }
+
+    /**
+     * wait until the task is cancelled or the time is up, returns true if it was cancelled
+     */
+    public synchronized boolean awaitCancel(long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        long left = millis;
+        while(!mCancelled && left > 0) {
+            wait(left);
+            left = end - System.currentTimeMillis();
+        }
+        return mCancelled;
+    }
+
+    /**
+     * remember the connection of the request being made so it can be aborted, it is
+     * disconnected right away if the task was already cancelled
+     */
+    public void setConnection(HttpURLConnection connection) {
+        synchronized (this) {
+            if(!mCancelled) {
+                mConnection = connection;
+                return;
+            }
+        }
+        connection.disconnect();
+    }
+
+    /**
+     * create a task for one of several requests made at the same time for this one, it has its
+     * own connection and failure and is cancelled with this task
+     */
+    public FetchTask fork() {
+        FetchTask fork = new FetchTask(mKey,mGeneration,null);
+        synchronized (this) {
+            if(!mCancelled) {
+                if(mForks == null) {
+                    mForks = new ArrayList<>();
+                }
+                mForks.add(fork);
+                return fork;
+            }
+        }
+        fork.cancel();
+        return fork;
+    }
+
+    /**
+     * run the listener once the task is cancelled, right away if it already is
+     */
+    public void addCancelListener(Runnable listener) {
+        synchronized (this) {
+            if(!mCancelled) {
+                if(mCancelListeners == null) {
+                    mCancelListeners = new ArrayList<>();
+                }
+                mCancelListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    public synchronized void removeCancelListener(Runnable listener) {
+        if(mCancelListeners != null) {
+            mCancelListeners.remove(listener);
+        }
+    }
+
+    /**
+     * cancel the task, the connection it reads from is disconnected so reading it fails and a
+     * request waiting for its next attempt gives up. Its forks are cancelled as well and its
+     * cancel listeners are run
+     */
+    public void cancel() {
+        HttpURLConnection connection;
+        ArrayList<FetchTask> forks;
+        ArrayList<Runnable> listeners;
+        synchronized (this) {
+            mCancelled = true;
+            connection = mConnection;
+            mConnection = null;
+            forks = mForks;
+            mForks = null;
+            listeners = mCancelListeners;
+            mCancelListeners = null;
+            // wake up a request waiting to be made again
+            notifyAll();
+        }
+        if(connection != null) {
+            connection.disconnect();
+        }
+        if(forks != null) {
+            for(FetchTask fork : forks) {
+                fork.cancel();
+            }
+        }
+        if(listeners != null) {
+            for(Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+    }
+
+    void run() {
+        if(!mCancelled) {
+            mJob.run(this);
+        }
+    }
+}
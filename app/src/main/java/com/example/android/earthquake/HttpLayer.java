@@ -0,0 +1,23 @@
+package com.example.android.earthquake;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * opens the connection of every request QueryUtils makes. The app uses PLATFORM, the
+ * HttpURLConnection of the platform which goes through the response cache installed by
+ * {@link QueryUtils#installHttpCache}, negotiates gzip and keeps connections alive. Tests plug
+ * in a layer which sends the same requests to a local stand-in server
+ */
+public interface HttpLayer {
+
+    HttpLayer PLATFORM = new HttpLayer() {
+        @Override
+        public HttpURLConnection open(URL url) throws IOException {
+            return (HttpURLConnection)url.openConnection();
+        }
+    };
+
+    HttpURLConnection open(URL url) throws IOException;
+}
@@ -0,0 +1,30 @@
+package com.example.android.earthquake;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The background threads every network request and database query of the app runs on, so the
+ * number of threads stays bounded however many requests are made
+ */
+public final class IoScheduler {
+
+    // number of requests running at the same time
+    private static final int THREADS = 3;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS);
+
+    /**
+     * create a private constructor so that no instance of the class is created
+     */
+    private IoScheduler() {
+
+    }
+
+    /**
+     * get the executor shared by the whole app
+     */
+    public static Executor get() {
+        return EXECUTOR;
+    }
+}
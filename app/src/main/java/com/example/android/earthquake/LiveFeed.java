@@ -0,0 +1,92 @@
+package com.example.android.earthquake;
+
+import java.util.Collections;
+
+/**
+ * Keeps the list up to date while it is on screen by polling the small summary feeds USGS
+ * generates every minute instead of making the whole query again. The feed of the last hour is
+ * polled while the polls are less than an hour apart, otherwise the one of the last day.
+ * Polls start a minute apart and the time between them doubles with every poll that brought
+ * nothing new, up to MAX_INTERVAL. The schedule must only be used on the main thread, the
+ * events of a feed are merged into an {@link EarthquakeSet} with {@link #merge} on a
+ * background thread
+ */
+public class LiveFeed {
+
+    static final String HOUR_URL =
+            "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/all_hour.geojson";
+    static final String DAY_URL =
+            "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/all_day.geojson";
+    // the feeds are generated once a minute, polling any faster finds nothing new
+    static final long MIN_INTERVAL = 60L * 1000;// milliseconds
+    static final long MAX_INTERVAL = 16L * 60 * 1000;// milliseconds
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private long mInterval = MIN_INTERVAL;
+    // time of the last poll which got the feed, 0 before the first one
+    private long mPolled;
+
+    /**
+     * get the feed which holds every event since the last poll, the hour feed leaves a minute
+     * for the poll to be late
+     */
+    public String getUrl(long now) {
+        return mPolled > 0 && now - mPolled < HOUR - MIN_INTERVAL ? HOUR_URL : DAY_URL;
+    }
+
+    /**
+     * get the number of milliseconds until the next poll
+     */
+    public long getDelay(long now) {
+        return Math.max(0,mPolled + mInterval - now);
+    }
+
+    // get the time between two polls
+    public long getInterval() {
+        return mInterval;
+    }
+
+    /**
+     * remember the poll made at now, the next one is made sooner if it changed the list
+     */
+    public void polled(long now,boolean changed) {
+        mPolled = now;
+        mInterval = changed ? MIN_INTERVAL : Math.min(mInterval * 2,MAX_INTERVAL);
+    }
+
+    /**
+     * back off after a poll which failed, the feed it missed is asked for by the next one
+     */
+    public void failed() {
+        mInterval = Math.min(mInterval * 2,MAX_INTERVAL);
+    }
+
+    /**
+     * poll every minute again, for example when the list comes back on screen
+     */
+    public void reset() {
+        mInterval = MIN_INTERVAL;
+    }
+
+    /**
+     * merge the events of a feed into the set of the list shown, new events within the
+     * magnitudes from startTime on are added and the ones with a newer update replace the ones
+     * in the set. A revised event whose magnitude left the range is removed. Returns what the
+     * feed changed
+     */
+    public static EarthquakeSet.ChangeSet merge(EarthquakeSet shown,EarthquakeTable feed,
+                                                int minMag,int maxMag,long startTime) {
+        EarthquakeTable within = new EarthquakeTable(feed.size());
+        EarthquakeTable left = new EarthquakeTable();
+        for(int row = 0; row < feed.size(); ++row) {
+            double magnitude = feed.getMagnitude(row);
+            if(magnitude >= minMag && magnitude <= maxMag && feed.getDateTime(row) >= startTime) {
+                within.add(feed,row);
+            }
+            else if(shown.contains(feed.getId(row))) {
+                left.add(feed,row);
+            }
+        }
+        return shown.merge(within,left,Collections.<String>emptyList());
+    }
+}
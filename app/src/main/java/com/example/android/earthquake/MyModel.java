@@ -1,55 +1,676 @@
 package com.example.android.earthquake;
 
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.File;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class MyModel extends ViewModel {
+public class MyModel extends AndroidViewModel {
 
     private static final String LOG_TAG = "MyModel";
-    private MutableLiveData<ArrayList<Earthquake>> mMutableLiveData;
+    // maximum number of earthquakes requested at once, any more are paged
+    private static final int LIMIT = EarthquakeSync.LIMIT;
+    // the summary counts the earthquakes per day of the shown window, which starts up to a day
+    // before WINDOW, today included
+    private static final int SUMMARY_DAYS = (int)((EarthquakeSync.WINDOW
+            + EarthquakeSync.WINDOW_STEP) / EarthquakeHistogram.DAY) + 1;
+    // a search runs once no key was typed for this long
+    private static final long SEARCH_DELAY = 150;// milliseconds
+    private MutableLiveData<EarthquakeTable> mMutableLiveData;
+    // pages through the matching earthquakes when there are more than LIMIT of them
+    private MutableLiveData<EarthquakePager> mPagerLiveData;
+    // requests of this screen, only the newest one posts its results
+    private final FetchQueue mFetchQueue = new FetchQueue(IoScheduler.get());
+    // the last request submitted and the live data it posts to
+    private FetchTask mTask;
+    private MutableLiveData<EarthquakeTable> mTaskLiveData;
+    private MutableLiveData<EarthquakePager> mTaskPagerLiveData;
+    // why the last request failed, one of the FetchTask failures, until the screen cleared it
+    private final MutableLiveData<Integer> mFailureLiveData = new MutableLiveData<>();
+    // counts per magnitude band and day of the earthquakes shown
+    private final MutableLiveData<EarthquakeHistogram> mSummaryLiveData = new MutableLiveData<>();
+    private final EarthquakeStore mStore;
+    // syncs the range picked in the settings before the list is shown again
+    private final SettingsPrefetch mPrefetch;
+    // binary copy of the last list fetched, shown first on launch
+    private final File mSnapshotFile;
+    // index over the earthquakes of the last successful request
+    private volatile EarthquakeIndex mIndex;
+    // index over the places of the list shown, only changed on background threads
+    private volatile PlaceIndex mPlaceIndex;
+    // spatial index over the list shown, built by the first search for coordinates in it
+    private volatile EarthquakeGrid mGrid;
+    // the newest list posted and not indexed yet, older ones are skipped since it replaced them
+    private final AtomicReference<EarthquakeTable> mUnindexed = new AtomicReference<>();
+    private final Runnable mIndexPlaces = new Runnable() {
+        @Override
+        public void run() {
+            // one list is indexed at a time, each continuing the one before
+            synchronized (mUnindexed) {
+                EarthquakeTable earthquakes;
+                while((earthquakes = mUnindexed.getAndSet(null)) != null) {
+                    indexPlaces(earthquakes);
+                }
+            }
+        }
+    };
+    // earthquakes whose place matches the query, null while not searching
+    private final MutableLiveData<EarthquakeTable> mSearchLiveData = new MutableLiveData<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // the query typed last, only used on the main thread
+    private String mQuery = "";
+    // number of the newest search, the results of older ones are dropped
+    private final AtomicInteger mSearchGeneration = new AtomicInteger();
+    private final Runnable mSearch = new Runnable() {
+        @Override
+        public void run() {
+            runSearch();
+        }
+    };
+    // preferences of the list shown, the live feed is merged with them
+    private int mMinMag;
+    private int mMaxMag;
+    private String mOrderBy;
+    // schedule of the live feed polls, only used on the main thread
+    private final LiveFeed mLiveFeed = new LiveFeed();
+    // the poll running, null while the live feed is stopped
+    private FetchTask mLiveTask;
+    // the earthquakes by id and their counts, kept up to date with the changes of the polls.
+    // The list they were built from and the list a poll posted last both match the set, any
+    // other list shown makes the next poll build them again. Only changed by the polls, which
+    // run one after the other
+    private volatile EarthquakeTable mLiveBase;
+    private volatile EarthquakeTable mLivePosted;
+    private EarthquakeSet mLiveSet;
+    private EarthquakeHistogram mLiveHistogram;
+    private final Runnable mPoll = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
+
+    public MyModel(@NonNull Application application) {
+        super(application);
+        // the stages are only timed in debug builds
+        PipelineMetrics.setEnabled(BuildConfig.DEBUG);
+        mStore = EarthquakeStore.getInstance(application);
+        mPrefetch = SettingsPrefetch.getInstance(application);
+        mSnapshotFile = new File(application.getCacheDir(),"earthquakes.snapshot");
+        // keep the saved earthquakes up to date while the app is not open
+        EarthquakeSyncWorker.schedule(application);
+        QueryUtils.installHttpCache(application.getCacheDir());
+    }
 
     /**
      * setup mutable live data object to observe the changes in data and only reload when preferences are changed in main activity class
+     * if the earthquakes already loaded hold the whole new range they are filtered and sorted
+     * here instead of making a network request
      */
-    public MutableLiveData<ArrayList<Earthquake>> getMutableLiveData(int minMag,int maxMag,String orderBy) {
+    public MutableLiveData<EarthquakeTable> getMutableLiveData(int minMag,int maxMag,String orderBy) {
         if(mMutableLiveData == null) {
-            // call the API
-            mMutableLiveData = new MutableLiveData<>();
-            init(minMag,maxMag,orderBy);
+            mMinMag = minMag;
+            mMaxMag = maxMag;
+            mOrderBy = orderBy;
+            EarthquakeIndex index = mIndex;
+            if(index != null && index.covers(minMag,maxMag,System.currentTimeMillis())) {
+                // a request still running for other preferences is no longer needed
+                mFetchQueue.cancelAll();
+                closePager();
+                mMutableLiveData = new MutableLiveData<>();
+                mPagerLiveData = new MutableLiveData<>();
+                EarthquakeTable earthquakes = index.query(minMag,maxMag,orderBy);
+                // the rows were copied from lists already shown, so they are formatted
+                earthquakes.format();
+                mMutableLiveData.setValue(earthquakes);
+                indexPlacesLater(earthquakes);
+                EarthquakeHistogram histogram = newHistogram();
+                histogram.putAll(earthquakes,0,earthquakes.size());
+                mSummaryLiveData.setValue(histogram.snapshot());
+            }
+            else{
+                // call the API
+                init(minMag,maxMag,orderBy);
+            }
         }
         return mMutableLiveData;
     }
 
     /**
-     * make a network request on background thread for the earthquakes
+     * show the snapshot of the last list and the earthquakes saved on the device first and then
+     * make a network request on background thread for the earthquakes, the fetched earthquakes
+     * are saved and the list is read again from the database. The list shown after a request
+     * is written to the snapshot for the next launch. If nothing was saved yet the earthquakes
+     * parsed so far are posted after every batch so the list can be shown before the whole
+     * response is read. The summary is counted once for a list read from disk and then kept up
+     * to date with the batches and the changes of a sync only.
+     * A request for other preferences still running is cancelled, while the same preferences
+     * share the request already running and its live data
      */
     public void init(int minMag,int maxMag,String orderBy) {
-        // perform the network request on separate thread
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        executorService.execute(new Runnable() {
+        // every request gets its own live data, a new one is created when the preferences change
+        MutableLiveData<EarthquakeTable> liveData = new MutableLiveData<>();
+        MutableLiveData<EarthquakePager> pagerLiveData = new MutableLiveData<>();
+        String key = minMag+"-"+maxMag+"-"+orderBy;
+        FetchTask task = mFetchQueue.submit(key,new FetchQueue.Job() {
+            @Override
+            public void run(FetchTask task) {
+                long start = PipelineMetrics.start();
+                // set once a list was posted, a failed request leaves it on the screen
+                AtomicBoolean shown = new AtomicBoolean();
+                EarthquakeHistogram histogram = newHistogram();
+                // mapped straight from disk, so the list shows before the database is opened
+                EarthquakeTable snapshot = EarthquakeSnapshot.read(mSnapshotFile,key);
+                if(snapshot != null) {
+                    shown.set(show(task,liveData,snapshot));
+                    summarize(task,histogram,snapshot);
+                }
+                // the range may still be prefetched from the settings, then it is saved and
+                // fresh once the prefetch finished
+                mPrefetch.join(minMag,maxMag,task);
+                long requestTime = System.currentTimeMillis();
+                // the window USGS uses when no start time is given, from midnight UTC on so the
+                // url stays the same all day and its cached response can be revalidated
+                long startTime = EarthquakeSync.windowStart(requestTime);
+                String parameters = EarthquakeSync.rangeParameters(minMag,maxMag,startTime);
+                EarthquakeTable stored =
+                        mStore.queryEarthquakes(minMag,maxMag,startTime,orderBy,LIMIT);
+                if(stored.size() > 0) {
+                    shown.set(show(task,liveData,stored));
+                    summarize(task,histogram,stored);
+                    long syncedAt = mStore.getSyncedAt(minMag,maxMag);
+                    if(requestTime - syncedAt < EarthquakeSync.FRESHNESS) {
+                        // synced a moment ago, in the background or by an earlier request
+                        Log.v(LOG_TAG,"Showing recently synced earthquakes");
+                        if(mFetchQueue.isCurrent(task)) {
+                            refreshed(start);
+                            setIndex(new EarthquakeIndex(minMag,maxMag,stored,
+                                    stored.size() < LIMIT,syncedAt));
+                            // the stored rows may differ from the server, so every page is
+                            // fetched
+                            page(task,pagerLiveData,parameters,orderBy,requestTime,
+                                    stored.size(),new EarthquakeTable());
+                        }
+                        return;
+                    }
+                }
+                String url = EarthquakeSync.QUERY_URL+"?format=geojson&"+parameters+"&limit="+LIMIT;
+                long syncedUpdate = mStore.getSyncedUpdate(minMag,maxMag);
+                if(syncedUpdate >= 0 && stored.size() > 0
+                        && EarthquakeSync.syncChanges(mStore,minMag,maxMag,startTime,syncedUpdate,
+                                task,requestTime,histogram)) {
+                    EarthquakeTable synced =
+                            mStore.queryEarthquakes(minMag,maxMag,startTime,orderBy,LIMIT);
+                    if(show(task,liveData,synced)) {
+                        // the changes were counted while merging them
+                        post(task,mSummaryLiveData,histogram.snapshot());
+                        refreshed(start);
+                        setIndex(new EarthquakeIndex(minMag,maxMag,synced,
+                                synced.size() < LIMIT,requestTime));
+                        EarthquakeSnapshot.write(mSnapshotFile,key,synced);
+                    }
+                    return;
+                }
+                if(task.isCancelled()) {
+                    return;
+                }
+                // number of rows of the streamed table counted in the summary so far
+                AtomicInteger summarized = new AtomicInteger();
+                EarthquakeTable earthquakes;
+                if(stored.size() > 0
+                        && SlicedFetch.isWide(startTime,requestTime,requestTime)) {
+                    // USGS searches a wide or old range faster in slices fetched at the same
+                    // time, the shown window of 30 days is not one. The saved earthquakes are
+                    // shown meanwhile so no batches are needed, without them the batches of one
+                    // request show the list sooner
+                    earthquakes = SlicedFetch.fetch(EarthquakeSync.QUERY_URL+"?format=geojson&"
+                                    +EarthquakeSync.magnitudeParameters(minMag,maxMag),
+                            startTime,requestTime,SlicedFetch.SLICES,orderBy,LIMIT,task);
+                }
+                else{
+                    // create table of earthquakes
+                    earthquakes = QueryUtils.fetchEarthquakeData(url+"&orderby="+orderBy,
+                            stored.size() == 0 ? new BatchListener() {
+                                @Override
+                                public void onBatch(EarthquakeTable earthquakes) {
+                                    // post a snapshot since parsing goes on adding to the table
+                                    shown.set(show(task,liveData,earthquakes.snapshot()));
+                                    // only the rows added since the last batch are counted
+                                    histogram.putAll(earthquakes,summarized.get(),
+                                            earthquakes.size());
+                                    summarized.set(earthquakes.size());
+                                    post(task,mSummaryLiveData,histogram.snapshot());
+                                }
+                            } : null,null,task);
+                }
+                if(task.isCancelled()) {
+                    Log.v(LOG_TAG,"Request cancelled");
+                    return;
+                }
+                if(earthquakes == null) {
+                    // the request failed, keep showing the snapshot, the saved earthquakes or the
+                    // ones parsed before the failure if there are any
+                    Log.v(LOG_TAG,"Request failed: " + task.getFailure());
+                    post(task,mFailureLiveData,task.getFailure());
+                    if(!shown.get()) {
+                        post(task,liveData,null);
+                    }
+                    return;
+                }
+                EarthquakeTable fetched = earthquakes;
+                // a result below the limit holds every matching event, so the range can be
+                // synced incrementally from now on
+                long storeStart = PipelineMetrics.start();
+                mStore.replaceEarthquakes(minMag,maxMag,startTime,earthquakes,
+                        earthquakes.size() < LIMIT,requestTime);
+                PipelineMetrics.record(PipelineMetrics.STORE,storeStart);
+                if(stored.size() > 0) {
+                    // reconcile the saved earthquakes with the fetched ones
+                    earthquakes = mStore.queryEarthquakes(minMag,maxMag,startTime,orderBy,LIMIT);
+                    if(!show(task,liveData,earthquakes)) {
+                        return;
+                    }
+                    summarize(task,histogram,earthquakes);
+                }
+                else{
+                    histogram.putAll(earthquakes,summarized.get(),earthquakes.size());
+                    earthquakes = earthquakes.snapshot();
+                    if(!show(task,liveData,earthquakes)) {
+                        return;
+                    }
+                    post(task,mSummaryLiveData,histogram.snapshot());
+                }
+                refreshed(start);
+                setIndex(new EarthquakeIndex(minMag,maxMag,earthquakes,
+                        earthquakes.size() < LIMIT,requestTime));
+                EarthquakeSnapshot.write(mSnapshotFile,key,earthquakes);
+                page(task,pagerLiveData,parameters,orderBy,requestTime,earthquakes.size(),
+                        fetched);
+            }
+        });
+        if(task != mTask) {
+            closePager();
+            mTask = task;
+            mTaskLiveData = liveData;
+            mTaskPagerLiveData = pagerLiveData;
+        }
+        else{
+            Log.v(LOG_TAG,"Sharing the request already running");
+        }
+        mMutableLiveData = mTaskLiveData;
+        mPagerLiveData = mTaskPagerLiveData;
+    }
+
+    /**
+     * if the list shown holds LIMIT earthquakes more events match than one request returns, then
+     * post a pager through all of them. The end time keeps the offsets of the pages from moving
+     * when new events come in. The first pages are taken from the response fetched from USGS,
+     * never from the store which may hold rows USGS no longer has, an empty table fetches every
+     * page
+     */
+    private void page(FetchTask task,MutableLiveData<EarthquakePager> pagerLiveData,
+                      String parameters,String orderBy,long requestTime,int shown,
+                      EarthquakeTable fetched) {
+        if(shown < LIMIT) {
+            return;
+        }
+        String pagedParameters = parameters+"&endtime="+EarthquakeSync.formatTime(requestTime);
+        int count = QueryUtils.fetchEarthquakeCount(
+                EarthquakeSync.COUNT_URL+"?"+pagedParameters,task);
+        if(count > shown) {
+            // the events after the end time are not in the pages, without them the rows line
+            // up with the offsets and a page cut short is requested again
+            EarthquakeTable first = new EarthquakeTable(fetched.size());
+            for(int row = 0; row < fetched.size(); ++row) {
+                if(fetched.getDateTime(row) <= requestTime) {
+                    first.add(fetched,row);
+                }
+            }
+            first.format();
+            post(task,pagerLiveData,new EarthquakePager(
+                    EarthquakeSync.QUERY_URL+"?format=geojson&"+pagedParameters
+                            +"&orderby="+orderBy,count,first));
+        }
+    }
+
+    /**
+     * keep the index of the list loaded, the settings do not prefetch the ranges it covers
+     */
+    private void setIndex(EarthquakeIndex index) {
+        mIndex = index;
+        mPrefetch.setLoaded(index);
+    }
+
+    private static EarthquakeHistogram newHistogram() {
+        return new EarthquakeHistogram(EarthquakeHistogram.DAY,SUMMARY_DAYS,TimeZone.getDefault(),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * count a whole list read from disk or fetched in full and post the counts. The list mostly
+     * holds the earthquakes counted before, only the ones which changed are counted again
+     */
+    private void summarize(FetchTask task,EarthquakeHistogram histogram,
+                           EarthquakeTable earthquakes) {
+        histogram.putOnly(earthquakes);
+        post(task,mSummaryLiveData,histogram.snapshot());
+    }
+
+    /**
+     * record the time a request took until its list was posted and log the metrics so far
+     */
+    private static void refreshed(long start) {
+        PipelineMetrics.record(PipelineMetrics.REFRESH,start);
+        if(PipelineMetrics.isEnabled()) {
+            Log.v(LOG_TAG,PipelineMetrics.dump());
+        }
+    }
+
+    /**
+     * format the list and post it if the task is still the newest request, then index its
+     * places. Returns false if the list was dropped
+     */
+    private boolean show(FetchTask task,MutableLiveData<EarthquakeTable> liveData,
+                         EarthquakeTable earthquakes) {
+        // the list of a request which was replaced is never formatted
+        if(mFetchQueue.isCurrent(task)) {
+            earthquakes.format();
+        }
+        if(!post(task,liveData,earthquakes)) {
+            return false;
+        }
+        indexPlacesLater(earthquakes);
+        return true;
+    }
+
+    /**
+     * index the places of a posted list on a background thread, so indexing never holds up the
+     * list. A list posted while an older one waits to be indexed replaces it
+     */
+    private void indexPlacesLater(EarthquakeTable earthquakes) {
+        if(mUnindexed.getAndSet(earthquakes) == null) {
+            IoScheduler.get().execute(mIndexPlaces);
+        }
+    }
+
+    /**
+     * index the places of the list, only the new rows if it continues the list indexed before,
+     * and search it again if a query was typed
+     */
+    private void indexPlaces(EarthquakeTable earthquakes) {
+        PlaceIndex index = mPlaceIndex;
+        if(index != null && index.isContinuedBy(earthquakes)) {
+            index.add(earthquakes);
+        }
+        else{
+            mPlaceIndex = new PlaceIndex(earthquakes);
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(!mQuery.isEmpty()) {
+                    runSearch();
+                }
+            }
+        });
+    }
+
+    /**
+     * filter the list shown by the place, the earthquakes with a word in their place starting
+     * with every word of the query are posted to {@link #getSearchResults()}. A query of
+     * coordinates, like "35.7,139.7 300km", filters by the {@link EarthquakeGrid.Area} instead.
+     * The search runs once the query did not change for SEARCH_DELAY, an empty query ends the
+     * search. Must be called on the main thread
+     */
+    public void search(String query) {
+        mQuery = query.trim();
+        mMainHandler.removeCallbacks(mSearch);
+        if(mQuery.isEmpty()) {
+            mSearchGeneration.incrementAndGet();
+            mSearchLiveData.setValue(null);
+            return;
+        }
+        mMainHandler.postDelayed(mSearch,SEARCH_DELAY);
+    }
+
+    /**
+     * search the place index for the last query on a background thread
+     */
+    private void runSearch() {
+        int generation = mSearchGeneration.incrementAndGet();
+        String query = mQuery;
+        PlaceIndex index = mPlaceIndex;
+        if(index == null) {
+            return;
+        }
+        IoScheduler.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                EarthquakeGrid.Area area = EarthquakeGrid.Area.parse(query);
+                EarthquakeTable earthquakes;
+                if(area != null) {
+                    // the grid is built once per list, later searches in it reuse it
+                    EarthquakeTable shown = index.getEarthquakes();
+                    EarthquakeGrid grid = mGrid;
+                    if(grid == null || grid.getEarthquakes() != shown) {
+                        grid = new EarthquakeGrid(shown);
+                        mGrid = grid;
+                    }
+                    earthquakes = area.find(grid);
+                }
+                else{
+                    earthquakes = index.filter(query);
+                }
+                if(mSearchGeneration.get() == generation) {
+                    earthquakes.format();
+                    mSearchLiveData.postValue(earthquakes);
+                }
+            }
+        });
+    }
+
+    /**
+     * get the earthquakes matching the search, null while nothing is searched for
+     */
+    public MutableLiveData<EarthquakeTable> getSearchResults() {
+        return mSearchLiveData;
+    }
+
+    // check if the list is filtered by a search
+    public boolean isSearching() {
+        return !mQuery.isEmpty();
+    }
+
+    // get the query the list is filtered by, empty while not searching
+    public String getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * poll the live feed while the list is on screen, polls are made a minute apart and less
+     * often while they bring nothing new. Must be called on the main thread
+     */
+    public void startLive() {
+        if(mLiveTask != null) {
+            return;
+        }
+        mLiveTask = new FetchTask("live",0,null);
+        mLiveFeed.reset();
+        mMainHandler.postDelayed(mPoll,mLiveFeed.getDelay(System.currentTimeMillis()));
+    }
+
+    /**
+     * stop polling the live feed, a poll being made is cancelled. Must be called on the main
+     * thread
+     */
+    public void stopLive() {
+        if(mLiveTask == null) {
+            return;
+        }
+        mLiveTask.cancel();
+        mLiveTask = null;
+        mMainHandler.removeCallbacks(mPoll);
+    }
+
+    /**
+     * fetch the live feed and merge its events into the list shown. Lists still being loaded
+     * wait for the next poll, and paged lists are left alone since posting a new list would
+     * drop their pages
+     */
+    private void poll() {
+        FetchTask task = mLiveTask;
+        MutableLiveData<EarthquakeTable> liveData = mMutableLiveData;
+        EarthquakeTable shown = liveData != null ? liveData.getValue() : null;
+        if(task == null || shown == null || mPagerLiveData.getValue() != null
+                || !mFetchQueue.isIdle()) {
+            mMainHandler.postDelayed(mPoll,mLiveFeed.getInterval());
+            return;
+        }
+        int minMag = mMinMag;
+        int maxMag = mMaxMag;
+        String orderBy = mOrderBy;
+        long now = System.currentTimeMillis();
+        String url = mLiveFeed.getUrl(now);
+        IoScheduler.get().execute(new Runnable() {
             @Override
             public void run() {
-                // create array list of earthquakes
-                mMutableLiveData.postValue(QueryUtils.fetchEarthquakeData("https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&minmagnitude="+minMag+ "&maxmagnitude="+maxMag+"&limit=3000&orderby="+orderBy));
+                EarthquakeTable feed = QueryUtils.fetchEarthquakeData(url,null,null,task);
+                if(shown != mLiveBase && shown != mLivePosted) {
+                    // a new list was loaded since the last poll
+                    mLiveSet = new EarthquakeSet(shown);
+                    mLiveHistogram = newHistogram();
+                    mLiveHistogram.putAll(shown,0,shown.size());
+                    mLiveBase = shown;
+                    mLivePosted = null;
+                }
+                EarthquakeTable merged = null;
+                EarthquakeHistogram histogram = null;
+                if(feed != null) {
+                    EarthquakeSet.ChangeSet changes = LiveFeed.merge(mLiveSet,feed,minMag,maxMag,
+                            EarthquakeSync.windowStart(now));
+                    if(!changes.isEmpty()) {
+                        Log.v(LOG_TAG,"Live feed: " + changes.getAdded().size() + " added, "
+                                + changes.getUpdated().size() + " updated, "
+                                + changes.getRemovedIds().size() + " removed");
+                        // the index sorts the merged rows the same way the query did
+                        merged = new EarthquakeIndex(minMag,maxMag,mLiveSet.toTable(),true,
+                                now).query(minMag,maxMag,orderBy);
+                        merged.format();
+                        mLiveHistogram.putChanges(changes);
+                        histogram = mLiveHistogram.snapshot();
+                    }
+                }
+                EarthquakeTable list = merged;
+                EarthquakeHistogram summary = histogram;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(task.isCancelled()) {
+                            if(list != null) {
+                                // the set holds changes which were never shown
+                                forgetLiveSet();
+                            }
+                            return;
+                        }
+                        if(feed == null) {
+                            Log.v(LOG_TAG,"Live feed failed: " + task.getFailure());
+                            mLiveFeed.failed();
+                        }
+                        else{
+                            mLiveFeed.polled(now,list != null);
+                        }
+                        // a list loaded while polling is newer than the merged one
+                        if(list != null && liveData == mMutableLiveData
+                                && liveData.getValue() == shown) {
+                            mLivePosted = list;
+                            liveData.setValue(list);
+                            mSummaryLiveData.setValue(summary);
+                            indexPlacesLater(list);
+                        }
+                        else if(list != null) {
+                            forgetLiveSet();
+                        }
+                        mMainHandler.postDelayed(mPoll,mLiveFeed.getInterval());
+                    }
+                });
             }
         });
-        executorService.shutdown();
+    }
+
+    // the live set no longer matches a list, it is built again by the next poll
+    private void forgetLiveSet() {
+        mLiveBase = null;
+        mLivePosted = null;
+    }
 
+    /**
+     * post the value if the task is still the newest request, returns false if it was dropped
+     */
+    private <T> boolean post(FetchTask task,MutableLiveData<T> liveData,T value) {
+        if(!mFetchQueue.isCurrent(task)) {
+            Log.v(LOG_TAG,"Dropping the result of request " + task.getGeneration());
+            return false;
+        }
+        liveData.postValue(value);
+        return true;
     }
 
     /**
      * fetching the earthquakes mutable list without calling the init method
      */
-    public MutableLiveData<ArrayList<Earthquake>> getEarthquakes() {
+    public MutableLiveData<EarthquakeTable> getEarthquakes() {
         return mMutableLiveData;
     }
 
+    /**
+     * get the pager of the current request, it is set only when more than LIMIT earthquakes match
+     */
+    public MutableLiveData<EarthquakePager> getPager() {
+        return mPagerLiveData;
+    }
+
+    /**
+     * get why the last request failed, one of the FetchTask failures. The earthquakes shown
+     * before stay posted when a request fails
+     */
+    public MutableLiveData<Integer> getFailure() {
+        return mFailureLiveData;
+    }
+
+    /**
+     * get the number of the shown earthquakes per magnitude band and day, for the summary above
+     * the list
+     */
+    public MutableLiveData<EarthquakeHistogram> getSummary() {
+        return mSummaryLiveData;
+    }
+
+    /**
+     * forget the failure once it was shown so it is not shown again
+     */
+    public void clearFailure() {
+        mFailureLiveData.setValue(FetchTask.FAILURE_NONE);
+    }
+
+    /**
+     * stop the pager of the last request from loading more pages
+     */
+    private void closePager() {
+        if(mPagerLiveData != null && mPagerLiveData.getValue() != null) {
+            mPagerLiveData.getValue().close();
+        }
+    }
+
     /**
      * make the mutable live data null so that a new request can be made
      */
@@ -57,5 +678,17 @@ public class MyModel extends ViewModel {
         mMutableLiveData = null;
     }
 
-
+    /**
+     * cancel the requests and write the HTTP cache to disk when the view model is no longer used,
+     * the database stays open for the background sync
+     */
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        mFetchQueue.cancelAll();
+        stopLive();
+        closePager();
+        mMainHandler.removeCallbacksAndMessages(null);
+        QueryUtils.flushHttpCache();
+    }
 }
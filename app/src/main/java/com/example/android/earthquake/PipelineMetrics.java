@@ -0,0 +1,195 @@
+package com.example.android.earthquake;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long every stage of loading the earthquakes takes, from connecting to USGS to
+ * binding the rows, and counts the bytes and events received. The latencies are kept as
+ * histograms with a bucket per power of two microseconds so recording never allocates.
+ * Metrics are off unless enabled, then {@link #start()} returns 0 and recording only checks it,
+ * so the calls can stay in the hot paths. The numbers are printed by {@link #dump()}, which
+ * backs {@code adb shell dumpsys activity com.example.android.earthquake}
+ */
+public final class PipelineMetrics {
+
+    // stages which are timed
+    public static final int CONNECT = 0;// opening the connection
+    public static final int FIRST_BYTE = 1;// from opening the connection to the response headers
+    public static final int READ = 2;// reading a whole response into a string
+    public static final int PARSE = 3;// parsing a response held in a string
+    public static final int STREAM = 4;// downloading and parsing a response as it arrives
+    public static final int STORE = 5;// writing the fetched earthquakes to the database
+    public static final int REFRESH = 6;// a whole request of the model, until its list is posted
+    public static final int BIND = 7;// binding a row of the list
+    private static final String[] STAGE_NAMES = {"connect", "first byte", "read", "parse",
+            "stream", "store", "refresh", "bind"};
+
+    // counters
+    public static final int BYTES_RECEIVED = 0;
+    public static final int EVENTS_PARSED = 1;
+    public static final int FEATURES_MALFORMED = 2;// features missing a needed field
+    public static final int FEATURES_DROPPED = 3;// deleted events and features after a parse error
+    private static final String[] COUNTER_NAMES = {"bytes received", "events parsed",
+            "malformed features", "dropped features"};
+
+    // bucket 0 counts latencies below a microsecond, bucket b those below 2^b microseconds
+    private static final int BUCKETS = 32;
+
+    private static volatile boolean sEnabled;
+    private static final AtomicLongArray sHistograms =
+            new AtomicLongArray(STAGE_NAMES.length * BUCKETS);
+    // total microseconds per stage
+    private static final AtomicLongArray sTotals = new AtomicLongArray(STAGE_NAMES.length);
+    private static final AtomicLongArray sCounters = new AtomicLongArray(COUNTER_NAMES.length);
+
+    /**
+     * create a private constructor so that no instance of the class is created
+     */
+    private PipelineMetrics() {
+
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * get the start time of a stage to pass to {@link #record(int,long)}, 0 when disabled
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * record the time from start to now for the stage, nothing is done if start is 0
+     */
+    public static void record(int stage,long start) {
+        if(start == 0) {
+            return;
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+        // number of bits of the latency, 2^(bucket - 1) <= micros < 2^bucket
+        int bucket = Math.min(BUCKETS - 1,64 - Long.numberOfLeadingZeros(micros));
+        sHistograms.incrementAndGet(stage * BUCKETS + bucket);
+        sTotals.addAndGet(stage,micros);
+    }
+
+    /**
+     * add delta to the counter
+     */
+    public static void count(int counter,long delta) {
+        if(sEnabled) {
+            sCounters.addAndGet(counter,delta);
+        }
+    }
+
+    /**
+     * wrap the stream to count the bytes read from it, the stream is returned as it is when
+     * metrics are disabled
+     */
+    public static InputStream countBytes(InputStream inputStream) {
+        if(!sEnabled || inputStream == null) {
+            return inputStream;
+        }
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if(b != -1) {
+                    sCounters.incrementAndGet(BYTES_RECEIVED);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer,int offset,int length) throws IOException {
+                int read = super.read(buffer,offset,length);
+                if(read > 0) {
+                    sCounters.addAndGet(BYTES_RECEIVED,read);
+                }
+                return read;
+            }
+        };
+    }
+
+    // get the number of times the stage was recorded
+    public static long getCount(int stage) {
+        long count = 0;
+        for(int bucket = 0; bucket < BUCKETS; ++bucket) {
+            count += sHistograms.get(stage * BUCKETS + bucket);
+        }
+        return count;
+    }
+
+    /**
+     * get the upper bound in microseconds of the latency below which the given fraction of the
+     * recorded ones lie, 0 if the stage was never recorded
+     */
+    public static long getPercentile(int stage,double fraction) {
+        long count = getCount(stage);
+        if(count == 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(count * fraction);
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; ++bucket) {
+            seen += sHistograms.get(stage * BUCKETS + bucket);
+            if(seen >= rank) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    // get the value of the counter
+    public static long getCounter(int counter) {
+        return sCounters.get(counter);
+    }
+
+    /**
+     * print the recorded stages and counters, the percentiles are the upper bounds of their
+     * histogram buckets
+     */
+    public static String dump() {
+        StringBuilder dump = new StringBuilder();
+        dump.append("Pipeline metrics").append(sEnabled ? "" : " (disabled)").append('\n');
+        for(int stage = 0; stage < STAGE_NAMES.length; ++stage) {
+            long count = getCount(stage);
+            if(count == 0) {
+                continue;
+            }
+            dump.append("  ").append(STAGE_NAMES[stage]).append(": count=").append(count)
+                    .append(" mean=").append(sTotals.get(stage) / count).append("us")
+                    .append(" p50<=").append(getPercentile(stage,0.5)).append("us")
+                    .append(" p90<=").append(getPercentile(stage,0.9)).append("us")
+                    .append(" p99<=").append(getPercentile(stage,0.99)).append("us\n");
+        }
+        for(int counter = 0; counter < COUNTER_NAMES.length; ++counter) {
+            dump.append("  ").append(COUNTER_NAMES[counter]).append(": ")
+                    .append(sCounters.get(counter)).append('\n');
+        }
+        return dump.toString();
+    }
+
+    /**
+     * forget everything recorded so far
+     */
+    public static void reset() {
+        for(int i = 0; i < sHistograms.length(); ++i) {
+            sHistograms.set(i,0);
+        }
+        for(int i = 0; i < sTotals.length(); ++i) {
+            sTotals.set(i,0);
+        }
+        for(int i = 0; i < sCounters.length(); ++i) {
+            sCounters.set(i,0);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.android.earthquake;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index of the words of the locations of a table, like "alaska" or "tokyo", for the search
+ * box of the list. The whole location is indexed since the nearest city is part of its offset.
+ * Every word maps to the rows it appears in, and the words are kept sorted so all the words
+ * starting with what was typed so far are one range of the map.
+ * Words are lower case and without accents, so typing a place without its accents finds it.
+ * Rows added to the table later, like the batches of a streamed response, are indexed without
+ * going over the older rows again. The index is filled on a background thread and searched on
+ * another one, so its methods are synchronized
+ */
+public class PlaceIndex {
+
+    // rows of a word in ascending order
+    private static final class Postings {
+        int[] mRows = new int[4];
+        int mSize;
+
+        void add(int row) {
+            // a word appearing twice in a place adds its row once
+            if(mSize > 0 && mRows[mSize - 1] == row) {
+                return;
+            }
+            if(mSize == mRows.length) {
+                mRows = Arrays.copyOf(mRows,mSize * 2);
+            }
+            mRows[mSize++] = row;
+        }
+    }
+
+    private final TreeMap<String,Postings> mWords = new TreeMap<>();
+    // words of the regions after the comma, which repeat across the rows, split once
+    private final HashMap<String,String[]> mRegionWords = new HashMap<>();
+    // the table whose rows are indexed, replaced by later snapshots of it
+    private EarthquakeTable mEarthquakes;
+    private int mSize;// number of rows indexed
+
+    /**
+     * build the index for the rows of the table
+     */
+    public PlaceIndex(EarthquakeTable earthquakes) {
+        mEarthquakes = earthquakes;
+        addRows(earthquakes);
+    }
+
+    /**
+     * check if the table holds the indexed rows followed by new ones, then it can be indexed
+     * with {@link #add(EarthquakeTable)} instead of building a new index
+     */
+    public synchronized boolean isContinuedBy(EarthquakeTable earthquakes) {
+        return earthquakes.continues(mEarthquakes);
+    }
+
+    /**
+     * index the rows added to the table since it was indexed, the table must continue the
+     * indexed one
+     */
+    public synchronized void add(EarthquakeTable earthquakes) {
+        mEarthquakes = earthquakes;
+        addRows(earthquakes);
+    }
+
+    private void addRows(EarthquakeTable earthquakes) {
+        for(int row = mSize; row < earthquakes.size(); ++row) {
+            // the parts of the location, without putting it together
+            String offset = earthquakes.getLocationOffset(row);
+            String primaryLocation = earthquakes.getPrimaryLocation(row);
+            if(offset == null) {
+                addWords(words(primaryLocation),row);
+                continue;
+            }
+            addWords(words(offset),row);
+            String[] regionWords = mRegionWords.get(primaryLocation);
+            if(regionWords == null) {
+                regionWords = words(primaryLocation);
+                mRegionWords.put(primaryLocation,regionWords);
+            }
+            addWords(regionWords,row);
+        }
+        mSize = earthquakes.size();
+    }
+
+    private void addWords(String[] words,int row) {
+        for(String word : words) {
+            Postings postings = mWords.get(word);
+            if(postings == null) {
+                postings = new Postings();
+                mWords.put(word,postings);
+            }
+            postings.add(row);
+        }
+    }
+
+    // get the table whose rows are indexed
+    public synchronized EarthquakeTable getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    /**
+     * return the rows in ascending order whose location has a word starting with every
+     * word of the query, "new z" finds "New Zealand". An empty query matches every row
+     */
+    public synchronized int[] search(String query) {
+        String[] words = words(query);
+        if(words.length == 0) {
+            int[] rows = new int[mSize];
+            for(int row = 0; row < mSize; ++row) {
+                rows[row] = row;
+            }
+            return rows;
+        }
+        BitSet matches = null;
+        for(String word : words) {
+            BitSet rows = new BitSet(mSize);
+            // every word from the query word up to the last word starting with it
+            for(Map.Entry<String,Postings> entry
+                    : mWords.subMap(word,word + Character.MAX_VALUE).entrySet()) {
+                Postings postings = entry.getValue();
+                for(int i = 0; i < postings.mSize; ++i) {
+                    rows.set(postings.mRows[i]);
+                }
+            }
+            if(matches == null) {
+                matches = rows;
+            }
+            else{
+                matches.and(rows);
+            }
+        }
+        int[] rows = new int[matches.cardinality()];
+        int i = 0;
+        for(int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+            rows[i++] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * return the earthquakes matching the query in the order of the indexed table
+     */
+    public synchronized EarthquakeTable filter(String query) {
+        int[] rows = search(query);
+        EarthquakeTable earthquakes = new EarthquakeTable(rows.length);
+        for(int row : rows) {
+            earthquakes.add(mEarthquakes,row);
+        }
+        return earthquakes;
+    }
+
+    /**
+     * split the text into lower case words without accents, anything but letters and digits
+     * separates words
+     */
+    static String[] words(String text) {
+        String folded = text.toLowerCase(Locale.ROOT);
+        for(int i = 0; i < folded.length(); ++i) {
+            if(folded.charAt(i) > 0x7f) {
+                // split the accents off the letters and drop them
+                folded = Normalizer.normalize(folded,Normalizer.Form.NFD)
+                        .replaceAll("\\p{M}+","");
+                break;
+            }
+        }
+        ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for(int i = 0; i <= folded.length(); ++i) {
+            boolean inWord = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if(inWord && start < 0) {
+                start = i;
+            }
+            else if(!inWord && start >= 0) {
+                words.add(folded.substring(start,i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+}
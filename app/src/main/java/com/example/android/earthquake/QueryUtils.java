@@ -1,6 +1,10 @@
 package com.example.android.earthquake;
 
+import android.net.http.HttpResponseCache;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
 import com.example.android.earthquake.Earthquake;
 
@@ -9,16 +13,21 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Helper methods related to requesting and receiving earthquake data from USGS.
@@ -27,6 +36,30 @@ public final class QueryUtils {
 
 
     public static final String LOG_TAG = "QueryUtils";
+    // number of earthquakes in the first batch handed to the batch listener
+    private static final int FIRST_BATCH_SIZE = 50;
+    // number of earthquakes in every batch after the first one
+    private static final int BATCH_SIZE = 500;
+    // name of the directory inside the cache directory for the HTTP responses
+    private static final String HTTP_CACHE_DIR = "http";
+    // maximum size of the HTTP response cache in bytes
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+    // responses with fewer features than this are parsed on the calling thread by the tree based
+    // parse, which is only used offline
+    private static final int PARALLEL_THRESHOLD = 1000;
+    // number of features parsed by one task of the parallel parse
+    private static final int PARSE_CHUNK = 250;
+    // timeouts of a single attempt of a request
+    private static final int CONNECT_TIMEOUT = 15000;// milliseconds
+    private static final int READ_TIMEOUT = 10000;// milliseconds
+    // number of attempts of a request which times out or gets a server error
+    private static final int MAX_ATTEMPTS = 3;
+    // delay before the second attempt, doubled for every one after it
+    private static final long RETRY_DELAY = 1000;// milliseconds
+    // larger responses are dropped, USGS returns at most 20000 events which is about 20MB
+    static final long MAX_RESPONSE_BYTES = 32 * 1024 * 1024;
+    // opens the connections of the requests
+    private static volatile HttpLayer sHttpLayer = HttpLayer.PLATFORM;
 
     /**
      * create a private constructor so that no instance of the class is created
@@ -38,18 +71,85 @@ public final class QueryUtils {
     /**
      * Query the USGS dataset and return an Earthquake object to represent an earthquake
      */
-    public static ArrayList<Earthquake> fetchEarthquakeData(String requestUrl) {
+    public static EarthquakeTable fetchEarthquakeData(String requestUrl) {
+        return fetchEarthquakeData(requestUrl,null);
+    }
+
+    /**
+     * Query the USGS dataset and report the earthquakes to the listener in batches while the
+     * response is still being parsed, the complete list is returned at the end
+     */
+    public static EarthquakeTable fetchEarthquakeData(String requestUrl,
+                                                            BatchListener listener) {
+        return fetchEarthquakeData(requestUrl,listener,null);
+    }
+
+    /**
+     * Query the USGS dataset, if deletedIds is not null the ids of the events USGS reports as
+     * deleted (requests made with includedeleted=true) are added to it instead of being skipped
+     */
+    public static EarthquakeTable fetchEarthquakeData(String requestUrl,
+                                                            BatchListener listener,
+                                                            ArrayList<String> deletedIds) {
+        return fetchEarthquakeData(requestUrl,listener,deletedIds,null);
+    }
+
+    /**
+     * Query the USGS dataset for the given task, cancelling the task aborts the request and
+     * null is returned. If the request fails null is returned too and the reason is set on the
+     * task, the batches already handed to the listener are still valid then
+     */
+    public static EarthquakeTable fetchEarthquakeData(String requestUrl,
+                                                            BatchListener listener,
+                                                            ArrayList<String> deletedIds,
+                                                            FetchTask task) {
         // create URL object
         URL url = createURL(requestUrl);
-        // Perform HTTP Request and receives a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP Request and parse the JSON response as it arrives
+        EarthquakeTable earthquakes = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            earthquakes = makeHttpRequest(url,listener,deletedIds,task);
         }
         catch (IOException e) {
             Log.e(LOG_TAG,"Error closing input stream",e);
         }
-        return extractFeaturesFromJson(jsonResponse);
+        return earthquakes;
+    }
+
+    /**
+     * ask the USGS count method how many events match the query, the answer is a plain number.
+     * Returns -1 if the request failed or the task was cancelled
+     */
+    public static int fetchEarthquakeCount(String requestUrl,FetchTask task) {
+        URL url = createURL(requestUrl);
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        try {
+            urlConnection = connect(url,task);
+            if(urlConnection == null) {
+                return -1;
+            }
+            inputStream = limitSize(urlConnection.getInputStream());
+            return Integer.parseInt(readFromStream(inputStream).trim());
+        }
+        catch (IOException | NumberFormatException e) {
+            Log.e(LOG_TAG,"Problem retrieving the earthquake count",e);
+            setFailure(task,failureOf(e));
+            if(urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+        finally {
+            if(inputStream != null) {
+                try {
+                    inputStream.close();
+                }
+                catch (IOException e) {
+                    Log.e(LOG_TAG,"Error closing input stream",e);
+                }
+            }
+        }
+        return -1;
     }
 
     /**
@@ -68,51 +168,481 @@ public final class QueryUtils {
     }
 
     /**
-     * Make a HTTP request for fetching the data from the USGS website
+     * install an on disk cache for the responses of HttpURLConnection, it is bounded in size and
+     * evicts the least recently used responses. Cached responses which are stale are revalidated
+     * with If-None-Match/If-Modified-Since and reused if USGS answers 304 Not Modified
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    public static void installHttpCache(File cacheDir) {
+        if(HttpResponseCache.getInstalled() != null) {
+            return;
+        }
+        try {
+            HttpResponseCache.install(new File(cacheDir,HTTP_CACHE_DIR),HTTP_CACHE_SIZE);
+        }
+        catch (IOException e) {
+            Log.e(LOG_TAG,"Error installing HTTP response cache",e);
+        }
+    }
 
-        // if url null, return
-        if(url == null) {
-            return jsonResponse;
+    /**
+     * open the connections of the requests with the given layer, for example to send them to a
+     * local server in tests
+     */
+    static void setHttpLayer(HttpLayer httpLayer) {
+        sHttpLayer = httpLayer;
+    }
+
+    /**
+     * write the HTTP cache journal to disk and log how many requests were served from the cache
+     */
+    public static void flushHttpCache() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if(cache != null) {
+            cache.flush();
+            Log.v(LOG_TAG,"HTTP cache requests: " + cache.getRequestCount() + ", hits: "
+                    + cache.getHitCount() + ", network: " + cache.getNetworkCount()
+                    + ", size: " + cache.size());
         }
+    }
+
+    /**
+     * Make a HTTP request for fetching the data from the USGS website
+     * the platform HttpURLConnection asks for gzip and unzips the response by itself as long as
+     * no Accept-Encoding header is set here, and it keeps the connection alive for the next
+     * request if the response is read to the end and the connection is not disconnected
+     */
+    private static EarthquakeTable makeHttpRequest(URL url,BatchListener listener,
+                                                   ArrayList<String> deletedIds,FetchTask task)
+            throws IOException {
+        EarthquakeTable earthquakes = null;
         HttpURLConnection urlConnection = null;
         InputStream inputStream = null;
         try {
-            urlConnection= (HttpURLConnection)url.openConnection();
-            urlConnection.setReadTimeout(10000/*milliseconds*/);
-            urlConnection.setConnectTimeout(15000/*milliseconds*/);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-            Log.v(LOG_TAG,"Network request made");
-
-            // if the request was successful(response code 200)
-            //then read the input stream and parse the output
-            if(urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            }
-            else{
-                Log.e(LOG_TAG,"Error Response code: " + urlConnection.getResponseCode());
+            urlConnection = connect(url,task);
+            // null if the task was cancelled or the request failed
+            if(urlConnection == null) {
+                return earthquakes;
             }
+            // parse the input stream directly, the request was successful(response code 200,
+            // also for a revalidated cached response)
+            inputStream = PipelineMetrics.countBytes(limitSize(urlConnection.getInputStream()));
+            long streamStart = PipelineMetrics.start();
+            earthquakes = readFeaturesFromStream(inputStream,listener,deletedIds);
+            PipelineMetrics.record(PipelineMetrics.STREAM,streamStart);
+            // read to the end so the response is stored in the cache
+            drain(inputStream);
         }
-        catch (IOException e) {
+        catch (IOException | IllegalStateException | NumberFormatException e) {
+            // the batches handed to the listener so far stay valid, the rest of the response is
+            // lost. The reader throws IllegalStateException for JSON of an unexpected shape
             Log.e(LOG_TAG,"Problem retrieving the earthquake JSON results",e);
-        }
-        finally {
+            setFailure(task,failureOf(e));
+            earthquakes = null;
+            // the connection can not be reused after a failure
             if(urlConnection != null) {
                 urlConnection.disconnect();
             }
+        }
+        finally {
+            // closing the stream instead of disconnecting lets the connection be reused
             if(inputStream != null) {
                 inputStream.close();
             }
         }
-        return jsonResponse;
+        return earthquakes;
     }
 
-    private static String readFromStream(InputStream inputStream) throws  IOException{
+    /**
+     * open a connection for the url and wait for the response code. Requests which time out or
+     * get a server error (5xx) are made again after a delay which doubles with every attempt, up
+     * to MAX_ATTEMPTS times. Returns the connection once USGS answered 200, or null if the task
+     * was cancelled or the request failed, the reason is then set on the task
+     */
+    private static HttpURLConnection connect(URL url,FetchTask task) throws IOException {
+        if(task != null) {
+            task.setFailure(FetchTask.FAILURE_NONE);
+        }
+        if(url == null) {
+            setFailure(task,FetchTask.FAILURE_NETWORK);
+            return null;
+        }
+        long delay = RETRY_DELAY;
+        for(int attempt = 1; ; ++attempt) {
+            // if the request is no longer needed, return
+            if(task != null && task.isCancelled()) {
+                return null;
+            }
+            HttpURLConnection urlConnection = sHttpLayer.open(url);
+            if(task != null) {
+                // cancelling the task disconnects, which makes reading the response fail
+                task.setConnection(urlConnection);
+            }
+            long start = PipelineMetrics.start();
+            int responseCode;
+            try {
+                urlConnection.setReadTimeout(READ_TIMEOUT);
+                urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
+                urlConnection.setRequestMethod("GET");
+                urlConnection.setUseCaches(true);
+                urlConnection.connect();
+                PipelineMetrics.record(PipelineMetrics.CONNECT,start);
+                Log.v(LOG_TAG,"Network request made");
+                responseCode = urlConnection.getResponseCode();
+                PipelineMetrics.record(PipelineMetrics.FIRST_BYTE,start);
+            }
+            catch (SocketTimeoutException e) {
+                urlConnection.disconnect();
+                if(attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                Log.w(LOG_TAG,"Request timed out, attempt " + attempt,e);
+                if(!backOff(task,delay)) {
+                    return null;
+                }
+                delay *= 2;
+                continue;
+            }
+            catch (IOException e) {
+                urlConnection.disconnect();
+                throw e;
+            }
+            if(responseCode == 200) {
+                // getContentLengthLong() needs API 24, longer lengths than an int are caught
+                // while reading
+                if(urlConnection.getContentLength() > MAX_RESPONSE_BYTES) {
+                    Log.e(LOG_TAG,"Response of " + urlConnection.getContentLength()
+                            + " bytes is too large");
+                    urlConnection.disconnect();
+                    setFailure(task,FetchTask.FAILURE_TOO_LARGE);
+                    return null;
+                }
+                return urlConnection;
+            }
+            Log.e(LOG_TAG,"Error Response code: " + responseCode);
+            InputStream errorStream = urlConnection.getErrorStream();
+            try {
+                drain(limitSize(errorStream));
+            }
+            catch (IOException e) {
+                urlConnection.disconnect();
+            }
+            finally {
+                if(errorStream != null) {
+                    errorStream.close();
+                }
+            }
+            // client errors such as a query matching too many events are not made again
+            if(responseCode < 500 || attempt == MAX_ATTEMPTS) {
+                setFailure(task,FetchTask.FAILURE_SERVER);
+                return null;
+            }
+            if(!backOff(task,delay)) {
+                return null;
+            }
+            delay *= 2;
+        }
+    }
+
+    /**
+     * wait before the next attempt of a request, returns false if the task was cancelled in the
+     * meantime
+     */
+    private static boolean backOff(FetchTask task,long delay) {
+        try {
+            if(task != null) {
+                return !task.awaitCancel(delay);
+            }
+            Thread.sleep(delay);
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void setFailure(FetchTask task,int failure) {
+        if(task != null && !task.isCancelled()) {
+            task.setFailure(failure);
+        }
+    }
+
+    /**
+     * tell why a request failed from the exception thrown while reading its response
+     */
+    private static int failureOf(Exception e) {
+        if(e instanceof ResponseTooLargeException) {
+            return FetchTask.FAILURE_TOO_LARGE;
+        }
+        if(e instanceof MalformedJsonException || e instanceof IllegalStateException
+                || e instanceof NumberFormatException) {
+            return FetchTask.FAILURE_MALFORMED;
+        }
+        return FetchTask.FAILURE_NETWORK;
+    }
+
+    /**
+     * wrap the stream so reading fails once more than MAX_RESPONSE_BYTES were read from it, a
+     * huge response is dropped instead of filling the memory
+     */
+    private static InputStream limitSize(InputStream inputStream) {
+        if(inputStream == null) {
+            return null;
+        }
+        return new FilterInputStream(inputStream) {
+            private long mRead;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if(b != -1) {
+                    count(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer,int offset,int length) throws IOException {
+                int read = super.read(buffer,offset,length);
+                if(read > 0) {
+                    count(read);
+                }
+                return read;
+            }
+
+            private void count(int bytes) throws ResponseTooLargeException {
+                mRead += bytes;
+                if(mRead > MAX_RESPONSE_BYTES) {
+                    throw new ResponseTooLargeException();
+                }
+            }
+        };
+    }
+
+    /**
+     * thrown while reading a response which is larger than MAX_RESPONSE_BYTES
+     */
+    static final class ResponseTooLargeException extends IOException {
+        ResponseTooLargeException() {
+            super("Response is larger than " + MAX_RESPONSE_BYTES + " bytes");
+        }
+    }
+
+    /**
+     * read whatever is left in the stream
+     */
+    private static void drain(InputStream inputStream) throws IOException {
+        if(inputStream == null) {
+            return;
+        }
+        byte[] buffer = new byte[1024];
+        while(inputStream.read(buffer) != -1) {
+            // nothing to do with the data
+        }
+    }
+
+    /**
+     * Return a table of the earthquakes read straight from the response stream.
+     * Unlike {@link #extractFeaturesFromJson(String)} this never holds the whole response as a
+     * String or a JSON tree, only the properties we use and the coordinates are read and
+     * everything else is skipped by the reader without creating strings for it. If a listener is
+     * given it gets the earthquakes parsed so far after the first and every following batch. Ids
+     * of deleted events are added to deletedIds if it is not null.
+     */
+    static EarthquakeTable readFeaturesFromStream(InputStream inputStream,
+                                                  BatchListener listener,
+                                                  ArrayList<String> deletedIds)
+            throws IOException {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        if(inputStream == null) {
+            return earthquakes;
+        }
+        // the reader is not closed here, the caller closes the stream once it is read to the end
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        reader.beginObject();
+        while(reader.hasNext()) {
+            if(reader.nextName().equals("features")) {
+                reader.beginArray();
+                int nextBatch = FIRST_BATCH_SIZE;
+                FeatureValues values = new FeatureValues();
+                while(reader.hasNext()) {
+                    if(readFeature(reader,values)) {
+                        earthquakes.add(values.id, values.magnitude, values.place, values.dateTime,
+                                values.updated, values.url, values.longitude, values.latitude,
+                                values.depth);
+                    }
+                    else if(values.deleted) {
+                        if(values.id != null && deletedIds != null) {
+                            deletedIds.add(values.id);
+                        }
+                        PipelineMetrics.count(PipelineMetrics.FEATURES_DROPPED,1);
+                    }
+                    else{
+                        PipelineMetrics.count(PipelineMetrics.FEATURES_MALFORMED,1);
+                    }
+                    if(listener != null && earthquakes.size() == nextBatch) {
+                        listener.onBatch(earthquakes);
+                        nextBatch += BATCH_SIZE;
+                    }
+                }
+                reader.endArray();
+            }
+            else{
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        PipelineMetrics.count(PipelineMetrics.EVENTS_PARSED,earthquakes.size());
+        Log.v(LOG_TAG,"Size of data: " + earthquakes.size());
+        return earthquakes;
+    }
+
+    /**
+     * values of the feature being parsed, one object is reused for all the features of a response
+     */
+    private static final class FeatureValues {
+        String id;
+        double magnitude;
+        String place;
+        long dateTime;
+        long updated;
+        String url;
+        double longitude;
+        double latitude;
+        double depth;
+        boolean deleted;
+
+        void clear() {
+            id = null;
+            magnitude = Double.NaN;
+            place = null;
+            dateTime = Long.MIN_VALUE;
+            updated = 0;
+            url = null;
+            longitude = Double.NaN;
+            latitude = Double.NaN;
+            depth = Double.NaN;
+            deleted = false;
+        }
+    }
+
+    /**
+     * read a single feature object into values, returns false if the event was deleted or if the
+     * id or one of the needed properties is missing
+     */
+    private static boolean readFeature(JsonReader reader,FeatureValues values)
+            throws IOException {
+        values.clear();
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(name.equals("properties")) {
+                readProperties(reader,values);
+            }
+            else if(name.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readGeometry(reader,values);
+            }
+            else if(name.equals("id") && reader.peek() == JsonToken.STRING) {
+                values.id = reader.nextString();
+            }
+            else{
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if(values.deleted) {
+            return false;
+        }
+        if(values.id == null || Double.isNaN(values.magnitude) || values.place == null
+                || values.dateTime == Long.MIN_VALUE || values.url == null) {
+            Log.w(LOG_TAG,"Skipping feature with missing properties");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * read longitude, latitude and depth from the coordinates of the geometry object of a
+     * feature, they stay NaN if they are missing
+     */
+    private static void readGeometry(JsonReader reader,FeatureValues values)
+            throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            if(reader.nextName().equals("coordinates")
+                    && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                for(int i = 0; reader.hasNext(); ++i) {
+                    if(reader.peek() != JsonToken.NUMBER) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    double coordinate = reader.nextDouble();
+                    if(i == 0) {
+                        values.longitude = coordinate;
+                    }
+                    else if(i == 1) {
+                        values.latitude = coordinate;
+                    }
+                    else if(i == 2) {
+                        values.depth = coordinate;
+                    }
+                }
+                reader.endArray();
+            }
+            else{
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * read magnitude, place, time, update time, url and status from the properties object of a
+     * feature
+     */
+    private static void readProperties(JsonReader reader,FeatureValues values)
+            throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "mag":
+                    values.magnitude = reader.nextDouble();
+                    break;
+                case "place":
+                    values.place = reader.nextString();
+                    break;
+                case "time":
+                    values.dateTime = reader.nextLong();
+                    break;
+                case "updated":
+                    values.updated = reader.nextLong();
+                    break;
+                case "url":
+                    values.url = reader.nextString();
+                    break;
+                case "status":
+                    values.deleted = reader.nextString().equals("deleted");
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the whole response into a String, used together with
+     * {@link #extractFeaturesFromJson(String)} by the older tree based parsing path
+     */
+    static String readFromStream(InputStream inputStream) throws  IOException{
         StringBuilder stringBuilder = new StringBuilder();
+        long start = PipelineMetrics.start();
         if(inputStream != null) {
             InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
             BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
@@ -122,28 +652,82 @@ public final class QueryUtils {
                 line = bufferedReader.readLine();
             }
         }
+        PipelineMetrics.record(PipelineMetrics.READ,start);
         return stringBuilder.toString();
     }
 
     /**
      * Return a list of {@link Earthquake} objects that has been built up from
-     * parsing a JSON response.
+     * parsing a JSON response. This builds the complete JSON tree and an object per earthquake,
+     * fetchEarthquakeData uses
+     * {@link #readFeaturesFromStream(InputStream,BatchListener,ArrayList)} instead.
+     */
+
+    static ArrayList<Earthquake> extractFeaturesFromJson(String jsonResponse) {
+        return extractFeaturesFromJson(jsonResponse,ParsePool.POOL);
+    }
+
+    /**
+     * pool for the parallel parse with a thread per core, ForkJoinPool.commonPool() needs API 24.
+     * It is only created the first time a response is parsed in parallel, which the app itself
+     * never does
      */
+    private static final class ParsePool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
 
-    private static ArrayList<Earthquake> extractFeaturesFromJson(String jsonResponse) {
+    /**
+     * same as {@link #extractFeaturesFromJson(String)}, responses with at least
+     * PARALLEL_THRESHOLD features are split into ranges of features which are parsed on the
+     * threads of the given pool and joined again in the original order.
+     * Offline and batch use only, for a response already held in memory like a file or a
+     * benchmark payload. The app never parses in parallel: fetchEarthquakeData streams the
+     * response with {@link #readFeaturesFromStream(InputStream,BatchListener,ArrayList)}, which
+     * parses while the bytes arrive and shows the first batch before the end is downloaded,
+     * splitting it would mean waiting for the whole response first
+     */
+    static ArrayList<Earthquake> extractFeaturesFromJson(String jsonResponse,ForkJoinPool pool) {
         if(jsonResponse.isEmpty()) {
             return  null;
         }
         ArrayList<Earthquake> earthquakes = new ArrayList<Earthquake>();
+        long start = PipelineMetrics.start();
         try {
             // make a json object from the given string
             JSONObject jsonObject = new JSONObject(jsonResponse);
             // get the features array from the json object
             JSONArray jsonArray = jsonObject.getJSONArray("features");
             Log.v(LOG_TAG,"Size of data: " + jsonArray.length());
-            for(int i = 0; i < jsonArray.length();++i) {
+            if(jsonArray.length() < PARALLEL_THRESHOLD) {
+                extractFeatures(jsonArray,0,jsonArray.length(),earthquakes);
+            }
+            else{
+                earthquakes = pool.invoke(new FeatureRangeTask(jsonArray,0,jsonArray.length()))
+                        .mEarthquakes;
+            }
+            // the features after an invalid one are not parsed
+            PipelineMetrics.count(PipelineMetrics.FEATURES_DROPPED,
+                    Math.max(0,jsonArray.length() - earthquakes.size() - 1));
+        }
+        catch (JSONException e) {
+            Log.e(LOG_TAG,"Invalid Json",e);
+        }
+        PipelineMetrics.record(PipelineMetrics.PARSE,start);
+        PipelineMetrics.count(PipelineMetrics.EVENTS_PARSED,earthquakes.size());
+        return earthquakes;
+    }
+
+    /**
+     * build up Earthquake objects for the features from start to end and add them to the list.
+     * Returns false if a feature is invalid, the features before it are kept in the list
+     */
+    private static boolean extractFeatures(JSONArray jsonArray,int start,int end,
+                                           ArrayList<Earthquake> earthquakes) {
+        try {
+            for(int i = start; i < end; ++i) {
                 // build up a list of Earthquake objects with the corresponding data.
                 JSONObject jsonObject1 = jsonArray.getJSONObject(i);
+                String id = jsonObject1.getString("id");
                 // get properties json object
                 JSONObject jsonObject2 = jsonObject1.getJSONObject("properties");
                 double magnitude = jsonObject2.getDouble("mag");
@@ -152,14 +736,67 @@ public final class QueryUtils {
                 Long dateTime = jsonObject2.getLong("time");
                 // get the url for more information
                 String url = jsonObject2.getString("url");
-                Earthquake earthquake = new Earthquake(magnitude, place, dateTime, url);
+                long updated = jsonObject2.getLong("updated");
+                // longitude, latitude and depth, NaN if missing
+                JSONObject geometry = jsonObject1.optJSONObject("geometry");
+                JSONArray coordinates = geometry != null ? geometry.optJSONArray("coordinates") : null;
+                double longitude = coordinates != null ? coordinates.optDouble(0) : Double.NaN;
+                double latitude = coordinates != null ? coordinates.optDouble(1) : Double.NaN;
+                double depth = coordinates != null ? coordinates.optDouble(2) : Double.NaN;
+                Earthquake earthquake = new Earthquake(id, magnitude, place, dateTime, updated, url,
+                        longitude, latitude, depth);
                 earthquakes.add(earthquake);
             }
         }
         catch (JSONException e) {
             Log.e(LOG_TAG,"Invalid Json",e);
+            PipelineMetrics.count(PipelineMetrics.FEATURES_MALFORMED,1);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * parses a range of features, ranges bigger than PARSE_CHUNK are split in two halves which
+     * are parsed in parallel. Like the sequential loop the result stops at the first invalid
+     * feature, so the halves after it are dropped
+     */
+    private static final class FeatureRangeTask extends RecursiveTask<FeatureRangeTask> {
+
+        private final JSONArray mFeatures;
+        private final int mStart;
+        private final int mEnd;
+        private ArrayList<Earthquake> mEarthquakes;
+        // false if an invalid feature was found in the range
+        private boolean mComplete;
+
+        FeatureRangeTask(JSONArray features,int start,int end) {
+            mFeatures = features;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected FeatureRangeTask compute() {
+            if(mEnd - mStart <= PARSE_CHUNK) {
+                mEarthquakes = new ArrayList<Earthquake>(mEnd - mStart);
+                mComplete = extractFeatures(mFeatures,mStart,mEnd,mEarthquakes);
+                return this;
+            }
+            int middle = (mStart + mEnd) >>> 1;
+            FeatureRangeTask right = new FeatureRangeTask(mFeatures,middle,mEnd);
+            right.fork();
+            FeatureRangeTask left = new FeatureRangeTask(mFeatures,mStart,middle).compute();
+            right.join();
+            mEarthquakes = left.mEarthquakes;
+            mComplete = left.mComplete;
+            if(mComplete) {
+                mEarthquakes.ensureCapacity(mEnd - mStart);
+                mEarthquakes.addAll(right.mEarthquakes);
+                mComplete = right.mComplete;
+            }
+            return this;
         }
-        return earthquakes;
     }
 
 }
\ No newline at end of file
@@ -32,6 +32,7 @@ public class SettingsActivity extends AppCompatActivity {
     private Spinner orderSpinner;
     private Toolbar mToolbar;
     private Context mContext;
+    private SettingsPrefetch mPrefetch;
 
     /**
      * initialise the views, adapter and set up click listeners for the buttons
@@ -55,6 +56,7 @@ public class SettingsActivity extends AppCompatActivity {
         maxMagTextView = findViewById(R.id.maxMagView);
         // get the context
         mContext = this;
+        mPrefetch = SettingsPrefetch.getInstance(this);
         // Apply the adapter to the spinner
         orderSpinner.setAdapter(adapter);
         decMin = findViewById(R.id.decMinMagBtn);
@@ -85,6 +87,7 @@ public class SettingsActivity extends AppCompatActivity {
                 minMagTextView.setText(String.valueOf(minMagValue));
                 editor.putInt(getString(R.string.minimumMagnitude),minMagValue);
                 editor.apply();
+                prefetch();
             }
         });
         incMin.setOnClickListener(new View.OnClickListener() {
@@ -102,6 +105,7 @@ public class SettingsActivity extends AppCompatActivity {
                 minMagTextView.setText(String.valueOf(minMagValue));
                 editor.putInt(getString(R.string.minimumMagnitude),minMagValue);
                 editor.apply();
+                prefetch();
             }
         });
         decMax.setOnClickListener(new View.OnClickListener() {
@@ -119,6 +123,7 @@ public class SettingsActivity extends AppCompatActivity {
                 maxMagTextView.setText(String.valueOf(maxMagValue));
                 editor.putInt(getString(R.string.maximumMagnitude),maxMagValue);
                 editor.apply();
+                prefetch();
             }
         });
         incMax.setOnClickListener(new View.OnClickListener() {
@@ -135,6 +140,7 @@ public class SettingsActivity extends AppCompatActivity {
                 maxMagTextView.setText(String.valueOf(maxMagValue));
                 editor.putInt(getString(R.string.maximumMagnitude),maxMagValue);
                 editor.apply();
+                prefetch();
             }
         });
         orderSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
@@ -162,4 +168,22 @@ public class SettingsActivity extends AppCompatActivity {
             }
         });
     }
+
+    /**
+     * start loading the range shown once the user stopped changing it, so the list is ready when
+     * the main activity is resumed
+     */
+    private void prefetch() {
+        mPrefetch.schedule(Integer.parseInt(minMagTextView.getText().toString()),
+                Integer.parseInt(maxMagTextView.getText().toString()));
+    }
+
+    /**
+     * the range picked last is prefetched right away when the settings are left
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mPrefetch.flush();
+    }
 }
\ No newline at end of file
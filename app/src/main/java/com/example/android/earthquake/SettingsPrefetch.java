@@ -0,0 +1,194 @@
+package com.example.android.earthquake;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Loads the magnitude range picked in the settings while the user is still picking it, so the
+ * list is ready as soon as the main screen is back. Every tap starts the delay again and only
+ * the range the taps stopped at is synced into the {@link EarthquakeStore}, where the model
+ * finds it fresh and shows it without a request. Picking another range cancels the prefetch of
+ * the one before, and ranges the model can filter from the earthquakes it already loaded are
+ * not prefetched at all.
+ * Must be used on the main thread, except for {@link #join}
+ */
+public final class SettingsPrefetch {
+
+    private static final String LOG_TAG = "SettingsPrefetch";
+    // a range is prefetched once no button was tapped for this long
+    static final long DELAY = 500;// milliseconds
+
+    private static SettingsPrefetch sInstance;
+
+    private final EarthquakeStore mStore;
+    private final FetchQueue mFetchQueue = new FetchQueue(IoScheduler.get());
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // the range waiting for the delay, only used on the main thread
+    private int mMinMag;
+    private int mMaxMag;
+    private boolean mScheduled;
+    private final Runnable mStart = new Runnable() {
+        @Override
+        public void run() {
+            start();
+        }
+    };
+    // index of the list the model loaded last
+    private volatile EarthquakeIndex mLoaded;
+    // the prefetch submitted last and its completion, guarded by this
+    private FetchTask mTask;
+    private Completion mDone;
+
+    /**
+     * finished once the prefetch ran or was cancelled, a model waiting for it is also woken up
+     * when its own request is cancelled
+     */
+    private static final class Completion implements Runnable {
+        private boolean mFinished;
+
+        @Override
+        public synchronized void run() {
+            mFinished = true;
+            notifyAll();
+        }
+
+        synchronized void wake() {
+            notifyAll();
+        }
+
+        synchronized void await(FetchTask waiting) throws InterruptedException {
+            while(!mFinished && !waiting.isCancelled()) {
+                wait();
+            }
+        }
+    }
+
+    private SettingsPrefetch(Context context) {
+        mStore = EarthquakeStore.getInstance(context);
+    }
+
+    /**
+     * get the prefetch of the app, the settings and the model share it
+     */
+    public static synchronized SettingsPrefetch getInstance(Context context) {
+        if(sInstance == null) {
+            sInstance = new SettingsPrefetch(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * remember the index of the list the model loaded, the ranges it covers are filtered from it
+     * so they are not prefetched
+     */
+    public void setLoaded(EarthquakeIndex index) {
+        mLoaded = index;
+    }
+
+    /**
+     * prefetch the range once no other range was picked for DELAY, a prefetch of another range
+     * still running is cancelled right away
+     */
+    public void schedule(int minMag,int maxMag) {
+        mMainHandler.removeCallbacks(mStart);
+        synchronized (this) {
+            if(mTask != null && !mTask.getKey().equals(key(minMag,maxMag))) {
+                mFetchQueue.cancelAll();
+            }
+        }
+        mMinMag = minMag;
+        mMaxMag = maxMag;
+        mScheduled = true;
+        mMainHandler.postDelayed(mStart,DELAY);
+    }
+
+    /**
+     * start the prefetch waiting for the delay now, for example when the settings are left
+     */
+    public void flush() {
+        if(mScheduled) {
+            mMainHandler.removeCallbacks(mStart);
+            start();
+        }
+    }
+
+    private void start() {
+        mScheduled = false;
+        int minMag = mMinMag;
+        int maxMag = mMaxMag;
+        EarthquakeIndex loaded = mLoaded;
+        if(loaded != null && loaded.covers(minMag,maxMag,System.currentTimeMillis())) {
+            Log.v(LOG_TAG,"Magnitudes " + minMag + " to " + maxMag + " are already loaded");
+            return;
+        }
+        Completion done = new Completion();
+        FetchTask task = mFetchQueue.submit(key(minMag,maxMag),new FetchQueue.Job() {
+            @Override
+            public void run(FetchTask task) {
+                try {
+                    if(System.currentTimeMillis() - mStore.getSyncedAt(minMag,maxMag)
+                            < EarthquakeSync.FRESHNESS) {
+                        return;
+                    }
+                    if(EarthquakeSync.sync(mStore,minMag,maxMag,task)) {
+                        Log.v(LOG_TAG,"Prefetched magnitudes " + minMag + " to " + maxMag);
+                    }
+                }
+                finally {
+                    done.run();
+                }
+            }
+        });
+        synchronized (this) {
+            // the same range still being prefetched is shared along with its latch
+            if(task != mTask) {
+                mTask = task;
+                mDone = done;
+                // a prefetch cancelled before it started never runs its job
+                task.addCancelListener(done);
+            }
+        }
+    }
+
+    /**
+     * wait until the prefetch of the range finished so the model does not request it a second
+     * time, a prefetch of another range is no longer needed and is cancelled. Returns at once if
+     * nothing is prefetched, and when the prefetch or the waiting task is cancelled. Called on
+     * a background thread
+     */
+    public void join(int minMag,int maxMag,FetchTask waiting) {
+        Completion done;
+        synchronized (this) {
+            if(mTask == null) {
+                return;
+            }
+            if(!mTask.getKey().equals(key(minMag,maxMag))) {
+                mFetchQueue.cancelAll();
+                return;
+            }
+            done = mDone;
+        }
+        Runnable wake = new Runnable() {
+            @Override
+            public void run() {
+                done.wake();
+            }
+        };
+        waiting.addCancelListener(wake);
+        try {
+            done.await(waiting);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            waiting.removeCancelListener(wake);
+        }
+    }
+
+    private static String key(int minMag,int maxMag) {
+        return minMag+"-"+maxMag;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android.earthquake;
+
+import android.util.Log;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Fetches a long time range as several slices of it at the same time instead of one request
+ * which waits for USGS to search the whole range. Every slice is its own request with the same
+ * order and its share of the limit, parsed while it arrives on its own connection, and the sorted
+ * slices are merged into one list with a k-way merge. If no slice filled its share every event of
+ * the range is in one of them, so cutting the merged list off at limit gives the events one
+ * request would, else the range is fetched in one request after all. The slices run on the
+ * shared I/O threads, the calling thread fetches the slices none of them took yet, so slicing
+ * never waits for a free thread
+ */
+public final class SlicedFetch {
+
+    private static final String LOG_TAG = "SlicedFetch";
+    // number of slices a range is fetched in
+    static final int SLICES = 4;
+    // a time range at least this long is searched faster in slices, three of the shown windows
+    static final long WIDE_WINDOW = 3 * EarthquakeSync.WINDOW;
+
+    /**
+     * create a private constructor so that no instance of the class is created
+     */
+    private SlicedFetch() {
+
+    }
+
+    /**
+     * tell if a range requested at now is better fetched in slices, when its time range is much
+     * wider than the shown window or it ended before the window, then USGS searches its archive.
+     * The shown window itself is answered fast enough by one request
+     */
+    public static boolean isWide(long startTime,long endTime,long now) {
+        return endTime - startTime >= WIDE_WINDOW || endTime < now - EarthquakeSync.WINDOW;
+    }
+
+    /**
+     * fetch the events of the query url from startTime up to endTime in the given number of
+     * slices, on the shared I/O threads and the calling one. The url must not have a start or
+     * end time, an order or a limit. Returns at most limit events in the USGS order orderBy, or
+     * null if a request failed or the task was cancelled, the reason is set on the task then
+     */
+    public static EarthquakeTable fetch(String url,long startTime,long endTime,int slices,
+                                        String orderBy,int limit,FetchTask task) {
+        long start = System.currentTimeMillis();
+        long[] bounds = sliceBounds(startTime,endTime,slices,EarthquakeSync.WINDOW_STEP);
+        // the slices together return the limit, so slicing downloads no more than one request
+        int sliceLimit = (limit + slices - 1) / slices;
+        EarthquakeTable[] results = new EarthquakeTable[slices];
+        FetchTask[] forks = new FetchTask[slices];
+        @SuppressWarnings("unchecked")
+        FutureTask<Void>[] futures = new FutureTask[slices];
+        for(int i = 0; i < slices; ++i) {
+            int slice = i;
+            forks[slice] = task != null ? task.fork() : null;
+            String sliceUrl = rangeUrl(url,bounds[slice],bounds[slice + 1],orderBy,sliceLimit);
+            futures[slice] = new FutureTask<>(new Runnable() {
+                @Override
+                public void run() {
+                    results[slice] = QueryUtils.fetchEarthquakeData(sliceUrl,null,null,
+                            forks[slice]);
+                }
+            },null);
+            // the first slice is fetched on this thread
+            if(slice > 0) {
+                IoScheduler.get().execute(futures[slice]);
+            }
+        }
+        boolean full = false;
+        try {
+            for(int slice = 0; slice < slices; ++slice) {
+                // does nothing if an I/O thread already took the slice
+                futures[slice].run();
+                futures[slice].get();
+                if(results[slice] == null) {
+                    // the other slices are of no use without this one
+                    Log.v(LOG_TAG,"Slice " + slice + " failed");
+                    cancel(forks,futures);
+                    if(task != null && forks[slice] != null) {
+                        task.setFailure(forks[slice].getFailure());
+                    }
+                    return null;
+                }
+                full |= results[slice].size() >= sliceLimit;
+            }
+        }
+        catch (InterruptedException e) {
+            cancel(forks,futures);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
+            Log.e(LOG_TAG,"Problem fetching a slice",e);
+            cancel(forks,futures);
+            if(task != null) {
+                task.setFailure(FetchTask.FAILURE_MALFORMED);
+            }
+            return null;
+        }
+        if(full) {
+            // a slice left out some of its events, which may belong in the merged list
+            Log.v(LOG_TAG,"A slice was cut off, fetching the range in one request");
+            return QueryUtils.fetchEarthquakeData(
+                    rangeUrl(url,bounds[0],bounds[slices],orderBy,limit),null,null,task);
+        }
+        EarthquakeTable earthquakes = merge(results,orderBy,limit);
+        Log.v(LOG_TAG,"Fetched " + slices + " slices in " + (System.currentTimeMillis() - start)
+                + " ms");
+        return earthquakes;
+    }
+
+    /**
+     * get the url of the events of the query url from start up to end, the end time is
+     * inclusive, so it stops a millisecond before end
+     */
+    private static String rangeUrl(String url,long start,long end,String orderBy,int limit) {
+        return url+"&starttime="+EarthquakeSync.formatTime(start)
+                +"&endtime="+EarthquakeSync.formatTime(end - 1)+"&orderby="+orderBy+"&limit="+limit;
+    }
+
+    /**
+     * split the range from startTime to endTime into slices of about the same length, slice i
+     * goes from bounds[i] up to bounds[i + 1]. The bounds after the start are rounded to
+     * multiples of step like the start of the window, the last up and the others down, so the
+     * urls of the slices stay the same for a step and their cached responses can be revalidated.
+     * A range too short to hold a step per slice is not rounded
+     */
+    static long[] sliceBounds(long startTime,long endTime,int slices,long step) {
+        long[] bounds = new long[slices + 1];
+        if(endTime - startTime < slices * step) {
+            step = 1;
+        }
+        bounds[0] = startTime;
+        for(int slice = 1; slice < slices; ++slice) {
+            bounds[slice] = (startTime + (endTime - startTime) * slice / slices) / step * step;
+        }
+        // the last bound is after endTime, which is in the range, the shown window ends now and
+        // no event is newer, an older range grows by less than a step
+        bounds[slices] = (endTime + step) / step * step;
+        return bounds;
+    }
+
+    /**
+     * merge tables which are each sorted in the USGS order orderBy into one table in that order
+     * holding at most limit earthquakes. The next row of every table waits in a heap, so taking
+     * the first of them costs log k for k tables. Of equal rows the one of the earlier table is
+     * taken first
+     */
+    static EarthquakeTable merge(EarthquakeTable[] tables,String orderBy,int limit) {
+        int[] next = new int[tables.length];
+        int total = 0;
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1,tables.length),
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a,Integer b) {
+                        int order = compareRows(tables[a],next[a],tables[b],next[b],orderBy);
+                        return order != 0 ? order : Integer.compare(a,b);
+                    }
+                });
+        for(int table = 0; table < tables.length; ++table) {
+            total += tables[table].size();
+            if(tables[table].size() > 0) {
+                heap.add(table);
+            }
+        }
+        EarthquakeTable earthquakes = new EarthquakeTable(Math.min(total,limit));
+        while(!heap.isEmpty() && earthquakes.size() < limit) {
+            int table = heap.poll();
+            earthquakes.add(tables[table],next[table]++);
+            if(next[table] < tables[table].size()) {
+                heap.add(table);
+            }
+        }
+        return earthquakes;
+    }
+
+    /**
+     * compare two rows by the USGS order, negative if the first one comes first
+     */
+    private static int compareRows(EarthquakeTable a,int rowA,EarthquakeTable b,int rowB,
+                                   String orderBy) {
+        switch (orderBy) {
+            case "time-asc":
+                return Long.compare(a.getDateTime(rowA),b.getDateTime(rowB));
+            case "magnitude":
+                return Double.compare(b.getMagnitude(rowB),a.getMagnitude(rowA));
+            case "magnitude-asc":
+                return Double.compare(a.getMagnitude(rowA),b.getMagnitude(rowB));
+            default:
+                return Long.compare(b.getDateTime(rowB),a.getDateTime(rowA));
+        }
+    }
+
+    // stop the slices running and drop the ones no thread took yet
+    private static void cancel(FetchTask[] forks,FutureTask<Void>[] futures) {
+        for(FetchTask fork : forks) {
+            if(fork != null) {
+                fork.cancel();
+            }
+        }
+        for(FutureTask<Void> future : futures) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.android.earthquake;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Hands out one shared instance and a small number for every distinct string, so texts repeated
+ * by thousands of earthquakes like the region "Alaska" are kept once and a row only needs an int
+ * for them. Strings are never dropped, so only texts with few distinct values should be pooled.
+ * Interning is synchronized since tables are filled on several threads, getting the string of
+ * a number does not lock
+ */
+public final class StringPool {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // guarded by this
+    private final HashMap<String,Integer> mIds = new HashMap<>();
+    private int mSize;
+    // replaced by a larger copy when full, so readers always see every string handed out
+    private volatile String[] mStrings = new String[INITIAL_CAPACITY];
+
+    /**
+     * get the number of the string, it is added to the pool the first time it is seen
+     */
+    public synchronized int intern(String string) {
+        Integer id = mIds.get(string);
+        if(id != null) {
+            return id;
+        }
+        String[] strings = mStrings;
+        if(mSize == strings.length) {
+            strings = Arrays.copyOf(strings,mSize * 2);
+        }
+        strings[mSize] = string;
+        mStrings = strings;
+        mIds.put(string,mSize);
+        return mSize++;
+    }
+
+    /**
+     * get the string with the number handed out by {@link #intern(String)}
+     */
+    public String get(int id) {
+        return mStrings[id];
+    }
+
+    // get the number of distinct strings in the pool
+    public synchronized int size() {
+        return mSize;
+    }
+}
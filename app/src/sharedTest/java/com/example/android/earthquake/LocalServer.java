@@ -0,0 +1,267 @@
+package com.example.android.earthquake;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A small HTTP/1.1 server standing in for USGS in the local and the instrumented tests, on the
+ * machine or the device they run on. Every request is answered with the response of the handler,
+ * bodies are gzipped when the client asks for it and connections are kept alive. It counts the
+ * requests, the connections and the bytes it wrote, so tests can check what went over the wire.
+ * Plug {@link #httpLayer()} into QueryUtils to send the requests of the app to it.
+ */
+public final class LocalServer implements Closeable {
+
+    /**
+     * a request line and its headers, the header names are lower case
+     */
+    public static final class Request {
+        public final String path;
+        public final Map<String, String> headers;
+
+        Request(String path, Map<String, String> headers) {
+            this.path = path;
+            this.headers = headers;
+        }
+
+        // get the value of a query parameter, null if the request has none
+        public String parameter(String name) {
+            int query = path.indexOf('?');
+            if (query < 0) {
+                return null;
+            }
+            for (String parameter : path.substring(query + 1).split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    return parameter.substring(name.length() + 1);
+                }
+            }
+            return null;
+        }
+
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    /**
+     * the status, headers and body of an answer
+     */
+    public static final class Response {
+        final int code;
+        final String reason;
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final byte[] body;
+        // part of the body on the wire written before the connection breaks off, 1 for all
+        double part = 1;
+        // false to send the body without a length, it ends when the connection is closed
+        boolean length = true;
+
+        public Response(int code, String reason, byte[] body) {
+            this.code = code;
+            this.reason = reason;
+            this.body = body;
+        }
+
+        public static Response ok(String body) {
+            return new Response(200, "OK", body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Response status(int code) {
+            return new Response(code, "Status",
+                    ("status " + code).getBytes(StandardCharsets.UTF_8));
+        }
+
+        public Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        // break off the connection after the given part of the body on the wire, from 0 to 1
+        public Response breakOff(double part) {
+            this.part = part;
+            return this;
+        }
+
+        // send the body without a Content-Length, then close the connection
+        public Response withoutLength() {
+            this.length = false;
+            return this;
+        }
+    }
+
+    public interface Handler {
+        Response answer(Request request) throws IOException, InterruptedException;
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Set<Socket> sockets = Collections.synchronizedSet(new HashSet<Socket>());
+    private final Handler handler;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public LocalServer(Handler handler) throws IOException {
+        this.handler = handler;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        connections.incrementAndGet();
+                        sockets.add(socket);
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        // closed by close()
+                    }
+                }
+            }
+        });
+    }
+
+    // get the url of the path and query on this server
+    public String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    /**
+     * a layer which sends every request to this server, keeping the path and query of its url
+     */
+    public HttpLayer httpLayer() {
+        return new HttpLayer() {
+            @Override
+            public HttpURLConnection open(URL url) throws IOException {
+                return (HttpURLConnection) new URL(url(url.getFile())).openConnection();
+            }
+        };
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    // get the number of bytes of the status lines, headers and bodies written so far
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * answer the requests of one connection until the client closes it
+     */
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                HashMap<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                            line.substring(colon + 1).trim());
+                }
+                requests.incrementAndGet();
+                Request request = new Request(requestLine.split(" ")[1], headers);
+                Response response = handler.answer(request);
+                // a body whose end the client cannot tell from its length ends the connection
+                boolean close = "close".equalsIgnoreCase(request.header("Connection"))
+                        || response.part < 1 || !response.length
+                        || response.headers.containsKey("Content-Length");
+                byte[] answer = encode(request, response, close);
+                out.write(answer);
+                out.flush();
+                bytesWritten.addAndGet(answer.length);
+                if (close) {
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // the client went away or the server was closed
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+            sockets.remove(socket);
+        }
+    }
+
+    private static byte[] encode(Request request, Response response, boolean close)
+            throws IOException {
+        byte[] body = response.body;
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(response.code).append(' ')
+                .append(response.reason).append("\r\n");
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        // a 304 has no body, a length set by the handler is sent as it is with the plain body
+        if (response.code == 304) {
+            body = new byte[0];
+        } else if (!response.headers.containsKey("Content-Length")) {
+            String encoding = request.header("Accept-Encoding");
+            if (encoding != null && encoding.contains("gzip")) {
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+                gzip.write(body);
+                gzip.close();
+                body = gzipped.toByteArray();
+                head.append("Content-Encoding: gzip\r\n");
+            }
+            if (response.length) {
+                head.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+        }
+        head.append("Connection: ").append(close ? "close" : "keep-alive").append("\r\n\r\n");
+        ByteArrayOutputStream answer = new ByteArrayOutputStream();
+        answer.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        answer.write(body, 0, (int) (body.length * response.part));
+        return answer.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.android.earthquake;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EarthquakeDiffCallback}, checking that only the rows which really
+ * changed between two tables are reported.
+ */
+public class EarthquakeDiffCallbackTest {
+
+    private int inserted;
+    private int removed;
+    private int changed;
+
+    private final ListUpdateCallback counter = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            inserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            removed += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            changed += count;
+        }
+    };
+
+    private static void add(EarthquakeTable table, int event, double magnitude, long updated) {
+        table.add("ev" + event, magnitude, "10km N of Place " + event, 1600000000000L - event * 60000L,
+                updated, "https://earthquake.usgs.gov/earthquakes/eventpage/ev" + event);
+    }
+
+    private void diff(EarthquakeTable oldTable, EarthquakeTable newTable) {
+        DiffUtil.calculateDiff(new EarthquakeDiffCallback(oldTable, newTable), false)
+                .dispatchUpdatesTo(counter);
+    }
+
+    @Test
+    public void revisedEvents_onlyChangeTheirRows() {
+        EarthquakeTable oldTable = new EarthquakeTable();
+        EarthquakeTable newTable = new EarthquakeTable();
+        for (int i = 0; i < 100; ++i) {
+            add(oldTable, i, 4.0, 1L);
+            // every tenth event was revised with a new magnitude
+            add(newTable, i, i % 10 == 0 ? 4.5 : 4.0, i % 10 == 0 ? 2L : 1L);
+        }
+        diff(oldTable, newTable);
+        assertEquals(0, inserted);
+        assertEquals(0, removed);
+        assertEquals(10, changed);
+    }
+
+    @Test
+    public void newEvent_isInsertedOnTop() {
+        EarthquakeTable oldTable = new EarthquakeTable();
+        EarthquakeTable newTable = new EarthquakeTable();
+        add(newTable, -1, 5.0, 1L);
+        for (int i = 0; i < 100; ++i) {
+            add(oldTable, i, 4.0, 1L);
+            add(newTable, i, 4.0, 1L);
+        }
+        diff(oldTable, newTable);
+        assertEquals(1, inserted);
+        assertEquals(0, removed);
+        assertEquals(0, changed);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EarthquakeGrid}, the results are compared against a brute force
+ * scan over the loaded earthquakes, also for boxes and circles over the poles and the
+ * antimeridian.
+ */
+public class EarthquakeGridTest {
+
+    private static EarthquakeTable randomEarthquakes(int count) {
+        Random random = new Random(7);
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        for (int i = 0; i < count; ++i) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            if (i % 10 == 0) {
+                // crowd some events next to the poles and the antimeridian
+                latitude = Math.copySign(85 + random.nextDouble() * 5, latitude);
+            }
+            else if (i % 10 == 1) {
+                longitude = Math.copySign(175 + random.nextDouble() * 5, longitude);
+            }
+            long time = 1600000000000L + i;
+            if (i % 50 == 2) {
+                // no coordinates, never found
+                earthquakes.add("ev" + i, 4.5, "Place " + i, time, time, "url" + i);
+            }
+            else {
+                earthquakes.add("ev" + i, 4.5, "Place " + i, time, time, "url" + i,
+                        longitude, latitude, 10);
+            }
+        }
+        // the edges of the grid
+        earthquakes.add("north", 5, "North Pole", 0, 0, "north", 0, 90, 0);
+        earthquakes.add("south", 5, "South Pole", 0, 0, "south", 180, -90, 0);
+        earthquakes.add("east", 5, "Antimeridian", 0, 0, "east", 180, 0, 0);
+        earthquakes.add("west", 5, "Antimeridian", 0, 0, "west", -180, 0, 0);
+        return earthquakes;
+    }
+
+    private static boolean inBox(EarthquakeTable earthquakes, int row, double minLat,
+                                 double maxLat, double minLon, double maxLon) {
+        double lat = earthquakes.getLatitude(row);
+        double lon = earthquakes.getLongitude(row);
+        if (Double.isNaN(lat) || lat < minLat || lat > maxLat) {
+            return false;
+        }
+        return minLon <= maxLon ? lon >= minLon && lon <= maxLon : lon >= minLon || lon <= maxLon;
+    }
+
+    private static List<String> ids(EarthquakeTable earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (int row = 0; row < earthquakes.size(); ++row) {
+            ids.add(earthquakes.getId(row));
+        }
+        return ids;
+    }
+
+    @Test
+    public void boundingBox_matchesBruteForce() {
+        EarthquakeTable earthquakes = randomEarthquakes(5000);
+        EarthquakeGrid grid = new EarthquakeGrid(earthquakes);
+        Random random = new Random(11);
+        for (int i = 0; i < 300; ++i) {
+            double minLat = random.nextDouble() * 180 - 90;
+            double maxLat = Math.min(90, minLat + random.nextDouble() * 60);
+            double minLon = random.nextDouble() * 360 - 180;
+            // every third box crosses the antimeridian
+            double maxLon = i % 3 == 0 ? random.nextDouble() * (minLon + 180) - 180
+                    : Math.min(180, minLon + random.nextDouble() * 90);
+            List<String> expected = new ArrayList<>();
+            for (int row = 0; row < earthquakes.size(); ++row) {
+                if (inBox(earthquakes, row, minLat, maxLat, minLon, maxLon)) {
+                    expected.add(earthquakes.getId(row));
+                }
+            }
+            assertEquals(expected, ids(grid.boundingBox(minLat, maxLat, minLon, maxLon)));
+        }
+    }
+
+    @Test
+    public void boundingBox_wholeWorld() {
+        EarthquakeTable earthquakes = randomEarthquakes(1000);
+        EarthquakeTable all = new EarthquakeGrid(earthquakes).boundingBox(-90, 90, -180, 180);
+        // every event with coordinates, in the order of the table
+        List<String> expected = new ArrayList<>();
+        for (int row = 0; row < earthquakes.size(); ++row) {
+            if (!Double.isNaN(earthquakes.getLatitude(row))) {
+                expected.add(earthquakes.getId(row));
+            }
+        }
+        assertEquals(expected, ids(all));
+        assertTrue(ids(all).contains("north"));
+        assertTrue(ids(all).contains("west"));
+    }
+
+    @Test
+    public void withinRadius_matchesBruteForce() {
+        EarthquakeTable earthquakes = randomEarthquakes(5000);
+        EarthquakeGrid grid = new EarthquakeGrid(earthquakes);
+        Random random = new Random(13);
+        double[] radii = {1, 50, 500, 2000, 8000, 25000};
+        for (int i = 0; i < 300; ++i) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            if (i % 4 == 0) {
+                latitude = Math.copySign(80 + random.nextDouble() * 10, latitude);
+            }
+            else if (i % 4 == 1) {
+                longitude = Math.copySign(170 + random.nextDouble() * 10, longitude);
+            }
+            double radius = radii[i % radii.length];
+            List<String> expected = new ArrayList<>();
+            for (int row = 0; row < earthquakes.size(); ++row) {
+                double lat = earthquakes.getLatitude(row);
+                if (!Double.isNaN(lat) && EarthquakeGrid.distanceKm(latitude, longitude, lat,
+                        earthquakes.getLongitude(row)) <= radius) {
+                    expected.add(earthquakes.getId(row));
+                }
+            }
+            assertEquals(expected, ids(grid.withinRadius(latitude, longitude, radius)));
+        }
+    }
+
+    @Test
+    public void distanceKm_knownValues() {
+        assertEquals(0, EarthquakeGrid.distanceKm(10, 20, 10, 20), 1e-9);
+        // a degree along the equator and across the antimeridian
+        assertEquals(111.195, EarthquakeGrid.distanceKm(0, 0, 0, 1), 0.01);
+        assertEquals(111.195, EarthquakeGrid.distanceKm(0, 179.5, 0, -179.5), 0.01);
+        // pole to pole
+        assertEquals(Math.PI * EarthquakeGrid.EARTH_RADIUS_KM,
+                EarthquakeGrid.distanceKm(90, 0, -90, 0), 0.01);
+    }
+
+    @Test
+    public void area_findsTypedCirclesAndBoxes() {
+        EarthquakeTable earthquakes = randomEarthquakes(2000);
+        EarthquakeGrid grid = new EarthquakeGrid(earthquakes);
+        assertEquals(ids(grid.withinRadius(35.7, 139.7, 300)),
+                ids(EarthquakeGrid.Area.parse("35.7, 139.7 300km").find(grid)));
+        assertEquals(ids(grid.withinRadius(-33, -70.5, EarthquakeGrid.DEFAULT_RADIUS_KM)),
+                ids(EarthquakeGrid.Area.parse("-33,-70.5").find(grid)));
+        assertEquals(ids(grid.boundingBox(30, 45, 170, -170)),
+                ids(EarthquakeGrid.Area.parse(" 30,45,170,-170 ").find(grid)));
+    }
+
+    @Test
+    public void area_isNullForPlacesAndPointsOffTheGlobe() {
+        assertNull(EarthquakeGrid.Area.parse("alaska"));
+        assertNull(EarthquakeGrid.Area.parse("35.7"));
+        assertNull(EarthquakeGrid.Area.parse("95,10"));
+        assertNull(EarthquakeGrid.Area.parse("10,190 50km"));
+        assertNull(EarthquakeGrid.Area.parse("45,30,0,10"));
+        assertNull(EarthquakeGrid.Area.parse("10,20 1.2.3km"));
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EarthquakeHistogram}, the counts kept up to date with every
+ * addition, revision and removal are compared against counting the remaining events again.
+ */
+public class EarthquakeHistogramTest {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+    private static final int DAYS = 31;
+    private static final long NOW = 1600000000000L;
+
+    // count the events from the start, every value holds magnitude and time
+    private static int[][] count(Map<String, double[]> events, EarthquakeHistogram histogram) {
+        int[][] counts = new int[EarthquakeHistogram.BANDS][histogram.getBuckets()];
+        for (double[] event : events.values()) {
+            long time = (long) event[1];
+            for (int bucket = 0; bucket < histogram.getBuckets(); ++bucket) {
+                long start = histogram.getBucketStart(bucket);
+                long end = bucket + 1 < histogram.getBuckets() ? histogram.getBucketStart(bucket + 1)
+                        : start + EarthquakeHistogram.DAY;
+                if (time >= start && time < end) {
+                    ++counts[EarthquakeFormatter.colorIndex(event[0])][bucket];
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void assertCounts(Map<String, double[]> events, EarthquakeHistogram histogram) {
+        int[][] expected = count(events, histogram);
+        int total = 0;
+        for (int band = 0; band < EarthquakeHistogram.BANDS; ++band) {
+            int bandCount = 0;
+            for (int bucket = 0; bucket < histogram.getBuckets(); ++bucket) {
+                assertEquals("band " + band + " bucket " + bucket, expected[band][bucket],
+                        histogram.getCount(band, bucket));
+                bandCount += expected[band][bucket];
+            }
+            assertEquals(bandCount, histogram.getBandCount(band));
+            total += bandCount;
+        }
+        assertEquals(total, histogram.getTotal());
+    }
+
+    @Test
+    public void incrementalChanges_matchCountingAgain() {
+        EarthquakeHistogram histogram =
+                new EarthquakeHistogram(EarthquakeHistogram.DAY, DAYS, ZONE, NOW);
+        Map<String, double[]> events = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; ++i) {
+            String id = "ev" + random.nextInt(1500);
+            int action = random.nextInt(10);
+            if (action == 0) {
+                histogram.remove(id);
+                events.remove(id);
+            }
+            else {
+                // new events or revisions of known ones, some older than the window
+                double magnitude = Math.round(random.nextDouble() * 110) / 10.0;
+                long time = NOW - (long) (random.nextDouble() * 40 * EarthquakeHistogram.DAY);
+                histogram.put(id, magnitude, time);
+                events.put(id, new double[]{magnitude, time});
+            }
+        }
+        assertCounts(events, histogram);
+    }
+
+    @Test
+    public void putAll_countsOnlyNewRows() {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        EarthquakeHistogram histogram =
+                new EarthquakeHistogram(EarthquakeHistogram.DAY, DAYS, ZONE, NOW);
+        Map<String, double[]> events = new HashMap<>();
+        int summarized = 0;
+        for (int i = 0; i < 300; ++i) {
+            long time = NOW - i * 3600000L;
+            double magnitude = (i % 80) / 10.0 + 1;
+            earthquakes.add("ev" + i, magnitude, "Place", time, time, "url");
+            events.put("ev" + i, new double[]{magnitude, time});
+            if (i % 50 == 49) {
+                histogram.putAll(earthquakes, summarized, earthquakes.size());
+                summarized = earthquakes.size();
+                assertCounts(events, histogram);
+            }
+        }
+        assertEquals(300, histogram.getTotal());
+    }
+
+    @Test
+    public void putChanges_revisesAndDeletes() {
+        EarthquakeHistogram histogram =
+                new EarthquakeHistogram(EarthquakeHistogram.DAY, DAYS, ZONE, NOW);
+        histogram.put("a", 2.5, NOW);
+        histogram.put("b", 4.5, NOW - EarthquakeHistogram.DAY);
+        histogram.put("c", 6.5, NOW - 2 * EarthquakeHistogram.DAY);
+        EarthquakeTable changed = new EarthquakeTable();
+        changed.add("a", 5.5, "Place", NOW, NOW, "url");
+        changed.add("d", 3.5, "Place", NOW, NOW, "url");
+        histogram.putChanges(changed, new ArrayList<>(Arrays.asList("c", "unknown")));
+        Map<String, double[]> events = new HashMap<>();
+        events.put("a", new double[]{5.5, NOW});
+        events.put("b", new double[]{4.5, NOW - EarthquakeHistogram.DAY});
+        events.put("d", new double[]{3.5, NOW});
+        assertCounts(events, histogram);
+        assertEquals(3, histogram.getTotal());
+        assertEquals(DAYS - 1, histogram.getBusiestBucket());
+    }
+
+    @Test
+    public void putOnly_countsTheChangesOfAWholeList() {
+        EarthquakeHistogram histogram =
+                new EarthquakeHistogram(EarthquakeHistogram.DAY, DAYS, ZONE, NOW);
+        histogram.put("a", 2.5, NOW);
+        histogram.put("b", 4.5, NOW - EarthquakeHistogram.DAY);
+        histogram.put("c", 6.5, NOW - 2 * EarthquakeHistogram.DAY);
+        // b is the same, a was revised, c is no longer in the list and d is new
+        EarthquakeTable list = new EarthquakeTable();
+        list.add("a", 5.5, "Place", NOW, NOW, "url");
+        list.add("b", 4.5, "Place", NOW - EarthquakeHistogram.DAY, NOW, "url");
+        list.add("d", 3.5, "Place", NOW, NOW, "url");
+        histogram.putOnly(list);
+        Map<String, double[]> events = new HashMap<>();
+        events.put("a", new double[]{5.5, NOW});
+        events.put("b", new double[]{4.5, NOW - EarthquakeHistogram.DAY});
+        events.put("d", new double[]{3.5, NOW});
+        assertCounts(events, histogram);
+        assertEquals(3, histogram.getTotal());
+        // events removed with an empty list are counted again once they are back
+        histogram.putOnly(new EarthquakeTable());
+        assertEquals(0, histogram.getTotal());
+        histogram.putOnly(list);
+        assertCounts(events, histogram);
+    }
+
+    @Test
+    public void newerEvent_movesTheWindow() {
+        EarthquakeHistogram histogram =
+                new EarthquakeHistogram(EarthquakeHistogram.DAY, DAYS, ZONE, NOW);
+        histogram.put("old", 3, NOW - 30 * EarthquakeHistogram.DAY);
+        histogram.put("new", 3, NOW);
+        assertEquals(2, histogram.getTotal());
+        // two days later the oldest day left the window
+        histogram.put("later", 3, NOW + 2 * EarthquakeHistogram.DAY);
+        assertEquals(2, histogram.getTotal());
+        assertEquals(1, histogram.getBucketCount(DAYS - 1));
+        assertEquals(1, histogram.getBucketCount(DAYS - 3));
+        // a revision of an event which left the window does not count it again
+        histogram.put("old", 4, NOW - 30 * EarthquakeHistogram.DAY);
+        histogram.remove("old");
+        assertEquals(2, histogram.getTotal());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void snapshot_isReadOnly() {
+        EarthquakeHistogram histogram =
+                new EarthquakeHistogram(EarthquakeHistogram.DAY, DAYS, ZONE, NOW);
+        histogram.put("a", 2.5, NOW);
+        EarthquakeHistogram snapshot = histogram.snapshot();
+        histogram.put("b", 2.5, NOW);
+        assertEquals(1, snapshot.getTotal());
+        snapshot.put("c", 2.5, NOW);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EarthquakeIndex}, the results are compared against a plain scan
+ * over the loaded earthquakes.
+ */
+public class EarthquakeIndexTest {
+
+    private static final String[] ORDERS = {"time", "time-asc", "magnitude", "magnitude-asc"};
+    private static final long NOW = 1600000000000L;
+
+    private static EarthquakeTable randomEarthquakes(int count, int minMag, int maxMag) {
+        Random random = new Random(42);
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        for (int i = 0; i < count; ++i) {
+            double magnitude = minMag + Math.round(random.nextDouble() * (maxMag - minMag) * 10) / 10.0;
+            long time = 1600000000000L + random.nextInt(1000000000);
+            earthquakes.add("ev" + i, magnitude, "10km N of Place " + i, time, time,
+                    "https://earthquake.usgs.gov/earthquakes/eventpage/ev" + i);
+        }
+        return earthquakes;
+    }
+
+    @Test
+    public void covers_onlyCompleteSubRanges() {
+        EarthquakeIndex complete = new EarthquakeIndex(2, 6, randomEarthquakes(100, 2, 6), true, NOW);
+        assertTrue(complete.covers(2, 6, NOW));
+        assertTrue(complete.covers(3, 5, NOW));
+        assertFalse(complete.covers(1, 6, NOW));
+        assertFalse(complete.covers(2, 7, NOW));
+
+        EarthquakeIndex truncated = new EarthquakeIndex(2, 6, randomEarthquakes(100, 2, 6), false, NOW);
+        assertFalse(truncated.covers(3, 5, NOW));
+    }
+
+    @Test
+    public void covers_nothingOnceStale() {
+        EarthquakeIndex index = new EarthquakeIndex(2, 6, randomEarthquakes(100, 2, 6), true, NOW);
+        assertTrue(index.covers(3, 5, NOW + EarthquakeSync.FRESHNESS - 1));
+        assertFalse(index.covers(3, 5, NOW + EarthquakeSync.FRESHNESS));
+    }
+
+    @Test
+    public void sortRows_isStableAndSortsNegativeMagnitudes() {
+        double[] magnitudes = {1.5, -0.5, 0, -1.2, 1.5, 7.1, -0.5, 0.3, -0.0};
+        long[] keys = new long[magnitudes.length];
+        for (int row = 0; row < keys.length; ++row) {
+            keys[row] = EarthquakeIndex.sortableBits(magnitudes[row]);
+        }
+        int[] rows = EarthquakeIndex.sortRows(keys);
+        assertArrayEquals(new int[]{3, 1, 6, 8, 2, 7, 0, 4, 5}, rows);
+        assertEquals(0, EarthquakeIndex.sortRows(new long[0]).length);
+    }
+
+    @Test
+    public void query_matchesScan() {
+        EarthquakeTable earthquakes = randomEarthquakes(3000, 0, 10);
+        EarthquakeIndex index = new EarthquakeIndex(0, 10, earthquakes, true, NOW);
+        for (int minMag = 0; minMag <= 10; ++minMag) {
+            for (int maxMag = minMag; maxMag <= 10; ++maxMag) {
+                for (String orderBy : ORDERS) {
+                    EarthquakeTable result = index.query(minMag, maxMag, orderBy);
+                    int expected = 0;
+                    for (int row = 0; row < earthquakes.size(); ++row) {
+                        if (earthquakes.getMagnitude(row) >= minMag && earthquakes.getMagnitude(row) <= maxMag) {
+                            ++expected;
+                        }
+                    }
+                    assertEquals(expected, result.size());
+                    for (int i = 1; i < result.size(); ++i) {
+                        switch (orderBy) {
+                            case "time":
+                                assertTrue(result.getDateTime(i - 1) >= result.getDateTime(i));
+                                break;
+                            case "time-asc":
+                                assertTrue(result.getDateTime(i - 1) <= result.getDateTime(i));
+                                break;
+                            case "magnitude":
+                                assertTrue(result.getMagnitude(i - 1) >= result.getMagnitude(i));
+                                break;
+                            default:
+                                assertTrue(result.getMagnitude(i - 1) <= result.getMagnitude(i));
+                        }
+                    }
+                    for (int i = 0; i < result.size(); ++i) {
+                        assertTrue(result.getMagnitude(i) >= minMag);
+                        assertTrue(result.getMagnitude(i) <= maxMag);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EarthquakeSet}, revisions arriving in any order leave the newest
+ * one in the set, checked against a map of the newest revision of every id.
+ */
+public class EarthquakeSetTest {
+
+    private static EarthquakeTable revision(String id, double magnitude, long updated) {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add(id, magnitude, "Place " + id, 1600000000000L, updated, "url");
+        return earthquakes;
+    }
+
+    @Test
+    public void olderRevision_isIgnored() {
+        EarthquakeSet set = new EarthquakeSet();
+        assertEquals(EarthquakeSet.ADDED, set.put(revision("a", 4.0, 300), 0));
+        assertEquals(EarthquakeSet.IGNORED, set.put(revision("a", 3.0, 100), 0));
+        assertEquals(EarthquakeSet.IGNORED, set.put(revision("a", 3.5, 300), 0));
+        assertEquals(EarthquakeSet.UPDATED, set.put(revision("a", 4.5, 400), 0));
+        assertEquals(EarthquakeSet.IGNORED, set.put(revision("a", 4.2, 350), 0));
+        assertEquals(1, set.size());
+        assertEquals(400, set.getRevision("a"));
+        EarthquakeTable earthquakes = set.toTable();
+        assertEquals(1, earthquakes.size());
+        assertEquals(4.5, earthquakes.getMagnitude(0), 0);
+    }
+
+    @Test
+    public void removal_keepsOlderRevisionsOut() {
+        EarthquakeSet set = new EarthquakeSet();
+        set.put(revision("a", 4.0, 100), 0);
+        set.put(revision("b", 4.0, 100), 0);
+        // a removal older than the revision in the set is ignored
+        assertFalse(set.remove("a", 50));
+        assertTrue(set.remove("a", 200));
+        assertFalse(set.contains("a"));
+        assertEquals(EarthquakeSet.IGNORED, set.put(revision("a", 4.0, 150), 0));
+        // a revision after the removal brings it back
+        assertEquals(EarthquakeSet.ADDED, set.put(revision("a", 4.1, 250), 0));
+        assertTrue(set.contains("a"));
+        // deleted events stay deleted
+        assertTrue(set.remove("b"));
+        assertEquals(EarthquakeSet.IGNORED, set.put(revision("b", 4.0, Long.MAX_VALUE - 1), 0));
+        assertFalse(set.remove("unknown"));
+        assertEquals(1, set.size());
+        assertEquals(-1, set.getRevision("unknown"));
+    }
+
+    @Test
+    public void merge_reportsChanges() {
+        EarthquakeSet set = new EarthquakeSet();
+        set.put(revision("a", 4.0, 100), 0);
+        set.put(revision("b", 4.0, 100), 0);
+        EarthquakeTable changed = new EarthquakeTable();
+        changed.add("a", 4.4, "Place a", 1, 200, "url");
+        changed.add("c", 2.5, "Place c", 1, 100, "url");
+        changed.add("a", 4.2, "Place a", 1, 150, "url");
+        EarthquakeSet.ChangeSet changes = set.merge(changed, Arrays.asList("b", "unknown"));
+        assertEquals(1, changes.getAdded().size());
+        assertEquals("c", changes.getAdded().getId(0));
+        assertEquals(1, changes.getUpdated().size());
+        assertEquals(4.4, changes.getUpdated().getMagnitude(0), 0);
+        assertEquals(Arrays.asList("b"), changes.getRemovedIds());
+        assertTrue(set.merge(changed, Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void shuffledRevisions_matchNewestRevisions() {
+        // every event has several revisions, put in random order with removals in between
+        Random random = new Random(11);
+        List<long[]> revisions = new ArrayList<>();
+        for (int event = 0; event < 5000; ++event) {
+            int count = 1 + random.nextInt(4);
+            for (int i = 0; i < count; ++i) {
+                revisions.add(new long[]{event, 1000 + random.nextInt(100000)});
+            }
+        }
+        Collections.shuffle(revisions, random);
+        EarthquakeSet set = new EarthquakeSet();
+        Map<String, Long> newest = new HashMap<>();
+        Map<String, Long> removedAt = new HashMap<>();
+        for (long[] revision : revisions) {
+            String id = "ev" + revision[0];
+            long updated = revision[1];
+            if (random.nextInt(20) == 0) {
+                boolean removed = set.remove(id, updated);
+                Long known = newest.get(id);
+                Long removal = removedAt.get(id);
+                boolean expected = known != null && removal == null && updated > known;
+                assertEquals(expected, removed);
+                if (removed) {
+                    removedAt.put(id, updated);
+                }
+                continue;
+            }
+            set.put(revision(id, updated % 100 / 10.0, updated), 0);
+            Long known = newest.get(id);
+            Long removal = removedAt.get(id);
+            long revisionInSet = removal != null ? removal : known != null ? known : -1;
+            if (updated > revisionInSet) {
+                newest.put(id, updated);
+                removedAt.remove(id);
+            }
+        }
+        EarthquakeTable earthquakes = set.toTable();
+        assertEquals(newest.size() - removedAt.size(), set.size());
+        assertEquals(set.size(), earthquakes.size());
+        HashSet<String> ids = new HashSet<>();
+        for (int row = 0; row < earthquakes.size(); ++row) {
+            String id = earthquakes.getId(row);
+            assertTrue("duplicate " + id, ids.add(id));
+            assertFalse(removedAt.containsKey(id));
+            assertEquals(newest.get(id).longValue(), earthquakes.getUpdated(row));
+        }
+    }
+}
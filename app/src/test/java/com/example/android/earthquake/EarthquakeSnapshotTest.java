@@ -0,0 +1,78 @@
+package com.example.android.earthquake;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EarthquakeSnapshot}, a table is written and read back. They run
+ * with Robolectric since the snapshot logs damaged and outdated files.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("earthquakes", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static EarthquakeTable earthquakes() {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add("us1", 4.5, "10km N of \u014Cita, Japan", 1600000000000L, 1600000100000L,
+                "https://earthquake.usgs.gov/earthquakes/eventpage/us1", 131.6, 33.2, 10.5);
+        // a repeated place is pooled, missing coordinates stay NaN
+        earthquakes.add("us2", 2.1, "10km N of \u014Cita, Japan", 1600000200000L, 1600000200000L,
+                "https://earthquake.usgs.gov/earthquakes/eventpage/us2");
+        earthquakes.add("us3", 6.7, "Alaska", 1600000300000L, 1600000400000L,
+                "https://earthquake.usgs.gov/earthquakes/eventpage/us3", -150.1, 61.2, 35);
+        return earthquakes;
+    }
+
+    @Test
+    public void writeAndRead_keepsEveryField() {
+        EarthquakeTable written = earthquakes();
+        assertTrue(EarthquakeSnapshot.write(file, "2-6-time", written));
+        EarthquakeTable read = EarthquakeSnapshot.read(file, "2-6-time");
+        assertNotNull(read);
+        assertEquals(written.size(), read.size());
+        for (int row = 0; row < written.size(); ++row) {
+            assertEquals(written.getId(row), read.getId(row));
+            assertEquals(written.getMagnitude(row), read.getMagnitude(row), 0);
+            assertEquals(written.getLocation(row), read.getLocation(row));
+            assertEquals(written.getDateTime(row), read.getDateTime(row));
+            assertEquals(written.getUpdated(row), read.getUpdated(row));
+            assertEquals(written.getUrl(row), read.getUrl(row));
+            assertEquals(written.getLongitude(row), read.getLongitude(row), 0);
+            assertEquals(written.getLatitude(row), read.getLatitude(row), 0);
+            assertEquals(written.getDepth(row), read.getDepth(row), 0);
+        }
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void read_otherKeyOrDamagedFile_isNull() throws IOException {
+        assertTrue(EarthquakeSnapshot.write(file, "2-6-time", earthquakes()));
+        assertNull(EarthquakeSnapshot.read(file, "3-6-time"));
+        try (RandomAccessFile damaged = new RandomAccessFile(file, "rw")) {
+            damaged.setLength(damaged.length() / 2);
+        }
+        assertNull(EarthquakeSnapshot.read(file, "2-6-time"));
+        assertTrue(file.delete());
+        assertNull(EarthquakeSnapshot.read(file, "2-6-time"));
+    }
+}
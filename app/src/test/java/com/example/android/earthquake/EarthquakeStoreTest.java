@@ -0,0 +1,160 @@
+package com.example.android.earthquake;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EarthquakeStore}, Robolectric gives it a real SQLite database
+ * which starts empty for every test.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeStoreTest {
+
+    private EarthquakeStore store;
+
+    @Before
+    public void setUp() {
+        store = new EarthquakeStore(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    // a table with an event of magnitude 3 per id, updated at the given times
+    private static EarthquakeTable earthquakes(String[] ids, long[] updated) {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        for (int i = 0; i < ids.length; ++i) {
+            earthquakes.add(ids[i], 3, "10 km N of Place, Alaska", 1000 + i, updated[i],
+                    EarthquakeTable.EVENT_PAGE_URL + ids[i], -150, 61, 10);
+        }
+        return earthquakes;
+    }
+
+    private static String[] ids(EarthquakeTable earthquakes) {
+        String[] ids = new String[earthquakes.size()];
+        for (int row = 0; row < ids.length; ++row) {
+            ids[row] = earthquakes.getId(row);
+        }
+        return ids;
+    }
+
+    private String[] stored(int minMag, int maxMag) {
+        return ids(store.queryEarthquakes(minMag, maxMag, 0, "time-asc", 100));
+    }
+
+    @Test
+    public void replaceComplete_replacesTheRangeAndIsSynced() {
+        store.replaceEarthquakes(2, 6, 0, earthquakes(new String[]{"a", "b"}, new long[]{5, 6}),
+                true, 100);
+        store.replaceEarthquakes(2, 6, 0, earthquakes(new String[]{"b", "c"}, new long[]{7, 8}),
+                true, 200);
+        // a is no longer in the complete result, so USGS removed it
+        assertArrayEquals(new String[]{"b", "c"}, stored(2, 6));
+        assertEquals(8, store.getSyncedUpdate(2, 6));
+        assertEquals(200, store.getSyncedAt(2, 6));
+        EarthquakeTable read = store.queryEarthquakes(2, 6, 0, "time-asc", 100);
+        assertEquals("10 km N of Place, Alaska", read.getLocation(0));
+        assertEquals(EarthquakeTable.EVENT_PAGE_URL + "b", read.getUrl(0));
+        assertEquals(-150, read.getLongitude(0), 0);
+    }
+
+    @Test
+    public void replaceComplete_withoutEvents_usesTheRequestTime() {
+        store.replaceEarthquakes(2, 6, 0, new EarthquakeTable(), true, 100);
+        assertEquals(0, stored(2, 6).length);
+        assertEquals(100, store.getSyncedUpdate(2, 6));
+    }
+
+    @Test
+    public void replaceIncomplete_keepsTheOtherRowsAndIsNotIncremental() {
+        store.replaceEarthquakes(2, 6, 0, earthquakes(new String[]{"a", "b"}, new long[]{5, 6}),
+                true, 100);
+        store.replaceEarthquakes(2, 6, 0, earthquakes(new String[]{"c"}, new long[]{7}),
+                false, 200);
+        assertArrayEquals(new String[]{"a", "b", "c"}, stored(2, 6));
+        // the marker of the complete result is kept, the sync time is the new one
+        assertEquals(6, store.getSyncedUpdate(2, 6));
+        assertEquals(200, store.getSyncedAt(2, 6));
+        assertEquals(-1, store.getSyncedUpdate(3, 6));
+        store.replaceEarthquakes(3, 6, 0, earthquakes(new String[]{"d"}, new long[]{9}),
+                false, 300);
+        // fresh, but still fetched in full
+        assertEquals(-1, store.getSyncedUpdate(3, 6));
+        assertEquals(300, store.getSyncedAt(3, 6));
+    }
+
+    @Test
+    public void merge_replacesRevisionsAndRemovesDeletedEvents() {
+        store.replaceEarthquakes(2, 6, 0,
+                earthquakes(new String[]{"a", "b", "c"}, new long[]{5, 6, 7}), true, 100);
+        EarthquakeTable changed = new EarthquakeTable();
+        changed.add("b", 4.2, "Revised place", 1001, 20, "https://example.com/b");
+        changed.add("d", 3, "New place", 1003, 21, "https://example.com/d");
+        store.mergeEarthquakes(2, 6, changed, new ArrayList<>(Arrays.asList("c", "unknown")),
+                300);
+        EarthquakeTable read = store.queryEarthquakes(2, 6, 0, "time-asc", 100);
+        assertArrayEquals(new String[]{"a", "b", "d"}, ids(read));
+        assertEquals(4.2, read.getMagnitude(1), 0);
+        assertEquals("Revised place", read.getLocation(1));
+        assertTrue(Double.isNaN(read.getLatitude(2)));
+        assertEquals(21, store.getSyncedUpdate(2, 6));
+        assertEquals(300, store.getSyncedAt(2, 6));
+    }
+
+    @Test
+    public void merge_revisionOutOfTheRange_leavesTheRange() {
+        store.replaceEarthquakes(2, 6, 0,
+                earthquakes(new String[]{"a", "b"}, new long[]{5, 6}), true, 100);
+        EarthquakeTable changed = new EarthquakeTable();
+        changed.add("a", 1.5, "Revised place", 1000, 20, "https://example.com/a");
+        changed.add("c", 1, "Small place", 1002, 22, "https://example.com/c");
+        store.mergeEarthquakes(2, 6, changed, new ArrayList<String>(), 300);
+        assertArrayEquals(new String[]{"b"}, stored(2, 6));
+        // the stored event was revised, the unknown one outside the range was skipped
+        assertArrayEquals(new String[]{"a", "b"}, stored(0, 10));
+        assertEquals(22, store.getSyncedUpdate(2, 6));
+    }
+
+    @Test
+    public void trim_forgetsTheSyncedRanges() {
+        store.replaceEarthquakes(2, 6, 0, earthquakes(new String[]{"a"}, new long[]{5}), true,
+                100);
+        store.replaceEarthquakes(7, 10, 0, new EarthquakeTable(), true, 100);
+        EarthquakeTable many = new EarthquakeTable(EarthquakeStore.MAX_STORED);
+        for (int i = 0; i < EarthquakeStore.MAX_STORED; ++i) {
+            // all newer than a, which is removed
+            many.add("m" + i, 3, "Place", 2000 + i, 2000 + i, "url");
+        }
+        store.replaceEarthquakes(3, 4, 0, many, false, 200);
+        assertEquals(-1, store.getSyncedUpdate(2, 6));
+        assertEquals(-1, store.getSyncedAt(2, 6));
+        assertEquals(-1, store.getSyncedUpdate(7, 10));
+        assertEquals(EarthquakeStore.MAX_STORED,
+                store.queryEarthquakes(2, 6, 0, "time", EarthquakeStore.MAX_STORED + 1).size());
+    }
+
+    @Test
+    public void syncState_isKeptPerRange() {
+        assertEquals(-1, store.getSyncedUpdate(2, 6));
+        assertEquals(-1, store.getSyncedAt(2, 6));
+        store.replaceEarthquakes(2, 6, 0, earthquakes(new String[]{"a"}, new long[]{5}), true,
+                100);
+        store.replaceEarthquakes(2, 5, 0, earthquakes(new String[]{"a"}, new long[]{5}), true,
+                150);
+        assertEquals(100, store.getSyncedAt(2, 6));
+        assertEquals(150, store.getSyncedAt(2, 5));
+        assertEquals(-1, store.getSyncedAt(3, 6));
+    }
+}
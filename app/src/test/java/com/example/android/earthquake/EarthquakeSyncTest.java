@@ -0,0 +1,154 @@
+package com.example.android.earthquake;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the queries of {@link EarthquakeSync}, the syncs run against a
+ * {@link LocalServer} which answers full requests and requests for changes with the bodies it is
+ * given, and counts the bytes it wrote.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EarthquakeSyncTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private EarthquakeStore store;
+    private LocalServer server;
+    private volatile String fullBody = features();
+    private volatile String changesBody = features();
+    private final List<String> paths = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        store = new EarthquakeStore(ApplicationProvider.getApplicationContext());
+        server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public LocalServer.Response answer(LocalServer.Request request) {
+                synchronized (paths) {
+                    paths.add(request.path);
+                }
+                return LocalServer.Response.ok(request.path.contains("updatedafter=")
+                        ? changesBody : fullBody).header("Content-Type", "application/json");
+            }
+        });
+        QueryUtils.setHttpLayer(server.httpLayer());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QueryUtils.setHttpLayer(HttpLayer.PLATFORM);
+        server.close();
+        store.close();
+    }
+
+    // a feature collection of the given features
+    private static String features(String... features) {
+        return "{\"type\":\"FeatureCollection\",\"features\":[" + String.join(",", features)
+                + "]}";
+    }
+
+    private static String feature(String id, double magnitude, long time, long updated) {
+        return "{\"type\":\"Feature\",\"properties\":{\"mag\":" + magnitude
+                + ",\"place\":\"10 km N of Place, Alaska\",\"time\":" + time
+                + ",\"updated\":" + updated + ",\"url\":\"" + EarthquakeTable.EVENT_PAGE_URL + id
+                + "\",\"status\":\"reviewed\"},\"geometry\":{\"type\":\"Point\","
+                + "\"coordinates\":[-150,61,10]},\"id\":\"" + id + "\"}";
+    }
+
+    private String[] stored(int minMag, int maxMag) {
+        EarthquakeTable earthquakes = store.queryEarthquakes(minMag, maxMag, 0, "time-asc", 100);
+        String[] ids = new String[earthquakes.size()];
+        for (int row = 0; row < ids.length; ++row) {
+            ids[row] = earthquakes.getId(row);
+        }
+        return ids;
+    }
+
+    @Test
+    public void windowStart_staysTheSameAllDay() {
+        // 2020-09-13T12:26:40Z
+        long now = 1600000000000L;
+        long start = EarthquakeSync.windowStart(now);
+        assertEquals(0, start % EarthquakeSync.WINDOW_STEP);
+        assertTrue(start <= now - EarthquakeSync.WINDOW);
+        assertTrue(start > now - EarthquakeSync.WINDOW - EarthquakeSync.WINDOW_STEP);
+        // the url of a range does not change until midnight UTC
+        String url = EarthquakeSync.rangeParameters(2, 6, start);
+        for (long later = now; later < now + 11 * HOUR; later += HOUR / 4) {
+            assertEquals(url, EarthquakeSync.rangeParameters(2, 6,
+                    EarthquakeSync.windowStart(later)));
+        }
+        assertEquals(start + EarthquakeSync.WINDOW_STEP,
+                EarthquakeSync.windowStart(now + 12 * HOUR));
+    }
+
+    @Test
+    public void syncChanges_revisionOutOfTheRange_leavesIt() {
+        long now = System.currentTimeMillis();
+        long startTime = EarthquakeSync.windowStart(now);
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add("a", 3, "Place", now - 3000, now - 3000, "url");
+        earthquakes.add("b", 4, "Place", now - 2000, now - 2000, "url");
+        store.replaceEarthquakes(2, 6, startTime, earthquakes, true, now);
+        EarthquakeHistogram histogram = new EarthquakeHistogram(EarthquakeHistogram.DAY, 31,
+                TimeZone.getTimeZone("UTC"), now);
+        histogram.putAll(earthquakes, 0, earthquakes.size());
+        // a was revised down to 1.5, c is new below the range and d is new in it
+        changesBody = features(feature("a", 1.5, now - 3000, now - 500),
+                feature("c", 1, now - 1000, now - 400), feature("d", 5, now - 900, now - 300));
+
+        assertTrue(EarthquakeSync.syncChanges(store, 2, 6, startTime,
+                store.getSyncedUpdate(2, 6), null, now, histogram));
+
+        // the changes were asked for at every magnitude
+        assertEquals(1, paths.size());
+        assertFalse(paths.get(0).contains("minmagnitude"));
+        assertFalse(paths.get(0).contains("maxmagnitude"));
+        assertArrayEquals(new String[]{"b", "d"}, stored(2, 6));
+        // the revision of a replaced it, c was never stored
+        assertArrayEquals(new String[]{"a", "b", "d"}, stored(0, 10));
+        assertEquals(now - 300, store.getSyncedUpdate(2, 6));
+        assertEquals(2, histogram.getTotal());
+    }
+
+    @Test
+    public void syncChanges_sendFewerBytesThanAFullSync() {
+        long now = System.currentTimeMillis();
+        String[] all = new String[1000];
+        for (int i = 0; i < all.length; ++i) {
+            all[i] = feature("e" + i, 2 + i % 4, now - 1000L * i, now - 1000L * i);
+        }
+        fullBody = features(all);
+        assertTrue(EarthquakeSync.sync(store, 2, 6, null));
+        long fullBytes = server.getBytesWritten();
+
+        // ten events revised since
+        String[] changes = new String[10];
+        for (int i = 0; i < changes.length; ++i) {
+            changes[i] = feature("e" + i, 3, now - 1000L * i, now + i);
+        }
+        changesBody = features(changes);
+        assertTrue(EarthquakeSync.sync(store, 2, 6, null));
+        long changesBytes = server.getBytesWritten() - fullBytes;
+
+        assertEquals(2, paths.size());
+        assertTrue(paths.get(1).contains("updatedafter="));
+        assertEquals(1000, store.queryEarthquakes(2, 6, 0, "time", 2000).size());
+        assertEquals(now + 9, store.getSyncedUpdate(2, 6));
+        assertTrue("full sync " + fullBytes + " bytes, sync of " + changes.length + " changes "
+                + changesBytes + " bytes", changesBytes * 50 < fullBytes);
+    }
+}
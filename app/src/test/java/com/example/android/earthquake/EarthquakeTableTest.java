@@ -0,0 +1,82 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the locations and urls {@link EarthquakeTable} keeps in parts, they are
+ * put together again exactly as they were added, and for the texts formatted once it is shown.
+ */
+public class EarthquakeTableTest {
+
+    @Test
+    public void locationsAndUrls_areRebuilt() {
+        String[] locations = {"12 km NNE of Anza, CA", "South of the Fiji Islands",
+                "5 km S of Volcano, Hawaii", "Alaska, Alaska", "1 km E of A,  B, C", ""};
+        String[] urls = {EarthquakeTable.EVENT_PAGE_URL + "ev0", "https://example.com/ev1",
+                EarthquakeTable.EVENT_PAGE_URL + "other", EarthquakeTable.EVENT_PAGE_URL + "ev3",
+                EarthquakeTable.EVENT_PAGE_URL, "url"};
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        for (int i = 0; i < locations.length; ++i) {
+            earthquakes.add("ev" + i, 3, locations[i], 1, 1, urls[i]);
+        }
+        EarthquakeTable copy = new EarthquakeTable();
+        for (int row = 0; row < earthquakes.size(); ++row) {
+            copy.add(earthquakes, row);
+        }
+        for (int row = 0; row < earthquakes.size(); ++row) {
+            assertEquals(locations[row], earthquakes.getLocation(row));
+            assertEquals(urls[row], earthquakes.getUrl(row));
+            assertEquals(locations[row], copy.getLocation(row));
+            assertEquals(urls[row], copy.getUrl(row));
+            assertTrue(earthquakes.hasSameLocation(row, copy, row));
+        }
+        assertEquals("12 km NNE of Anza", earthquakes.getOffset(0));
+        assertEquals(" CA", earthquakes.getPrimaryLocation(0));
+        assertEquals("Near the", earthquakes.getOffset(1));
+        assertEquals("South of the Fiji Islands", earthquakes.getPrimaryLocation(1));
+        assertFalse(earthquakes.hasSameLocation(0, earthquakes, 2));
+    }
+
+    @Test
+    public void regions_areSharedBetweenRows() {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add("a", 3, "10 km W of Anchorage, " + new String("Alaska"), 1, 1, "url");
+        earthquakes.add("b", 3, "20 km E of Nome, " + new String("Alaska"), 1, 1, "url");
+        assertSame(earthquakes.getPrimaryLocation(0), earthquakes.getPrimaryLocation(1));
+    }
+
+    @Test
+    public void placesWithoutAComma_areKeptAsTheyAre() {
+        String place = new String("South of the Fiji Islands");
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add("a", 3, place, 1, 1, "url");
+        earthquakes.add("b", 3, "10 km W of Anchorage, Alaska", 1, 1, "url");
+        // not pooled, the row keeps the string it was given
+        assertSame(place, earthquakes.getPrimaryLocation(0));
+        assertSame(place, earthquakes.getLocation(0));
+        assertNull(earthquakes.getLocationOffset(0));
+        assertEquals("10 km W of Anchorage", earthquakes.getLocationOffset(1));
+        assertEquals(" Alaska", earthquakes.getPrimaryLocation(1));
+    }
+
+    @Test
+    public void texts_areFormattedOnlyWhenShown() {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add("a", 4.56, "Place", 1600000000000L, 1, "url");
+        assertNull(earthquakes.getMagnitudeText(0));
+        assertNull(earthquakes.getDate(0));
+        EarthquakeFormatter formatter = new EarthquakeFormatter();
+        earthquakes.snapshot().format();
+        assertEquals(formatter.formatMagnitude(4.56), earthquakes.getMagnitudeText(0));
+        assertEquals(formatter.formatDate(1600000000000L), earthquakes.getDate(0));
+        assertEquals(formatter.formatTime(1600000000000L), earthquakes.getTime(0));
+        // a copied row keeps its texts, a new one waits for the next format
+        EarthquakeTable copy = new EarthquakeTable();
+        copy.add(earthquakes, 0);
+        copy.add("b", 3, "Place", 1600000000000L, 1, "url");
+        assertSame(earthquakes.getMagnitudeText(0), copy.getMagnitudeText(0));
+        assertNull(copy.getMagnitudeText(1));
+    }
+}
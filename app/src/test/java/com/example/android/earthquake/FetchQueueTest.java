@@ -0,0 +1,185 @@
+package com.example.android.earthquake;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FetchQueue}, the requests go to a {@link LocalServer} which answers
+ * slowly and counts how many requests it got.
+ */
+public class FetchQueueTest {
+
+    private static final int RESPONSE_DELAY = 300;// milliseconds
+
+    private LocalServer server;
+    private final AtomicInteger results = new AtomicInteger();
+    private ExecutorService executor;
+    private FetchQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public LocalServer.Response answer(LocalServer.Request request)
+                    throws InterruptedException {
+                Thread.sleep(RESPONSE_DELAY);
+                return LocalServer.Response.ok("ok");
+            }
+        });
+        executor = Executors.newFixedThreadPool(3);
+        queue = new FetchQueue(executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    // a job which makes one request to the local server and counts the answers it read
+    private FetchQueue.Job request(String query) {
+        return new FetchQueue.Job() {
+            @Override
+            public void run(FetchTask task) {
+                try {
+                    URL url = new URL(server.url("/query?" + query));
+                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                    task.setConnection(connection);
+                    InputStream in = connection.getInputStream();
+                    while (in.read() != -1) {
+                        // read the whole answer
+                    }
+                    in.close();
+                    if (queue.isCurrent(task)) {
+                        results.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    // cancelled
+                }
+            }
+        };
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        // every job runs on the executor, the queue is idle once it has no work left
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void quickChanges_makeAtMostTwoRequests() throws Exception {
+        // a warmed up connection reaches the server within the pause between the changes
+        queue.submit("warm-up", request("minmagnitude=2"));
+        long warmUp = System.currentTimeMillis() + 5000;
+        while (results.get() == 0 && System.currentTimeMillis() < warmUp) {
+            Thread.sleep(10);
+        }
+        int warmUpRequests = server.getRequests();
+        results.set(0);
+        FetchTask last = null;
+        for (int i = 0; i < 20; ++i) {
+            last = queue.submit("2-" + i + "-time", request("minmagnitude=2&i=" + i));
+            Thread.sleep(5);
+        }
+        // wait for the last request, the older ones were cancelled or skipped
+        long deadline = System.currentTimeMillis() + 5000;
+        while (results.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        awaitIdle();
+        int requests = server.getRequests() - warmUpRequests;
+        assertTrue("server got " + requests + " requests", requests <= 2);
+        assertEquals(1, results.get());
+        assertTrue(queue.isCurrent(last));
+        assertEquals(21, last.getGeneration());
+    }
+
+    @Test
+    public void sameQuery_sharesOneRequest() throws Exception {
+        FetchTask first = queue.submit("2-6-time", request("minmagnitude=2"));
+        for (int i = 0; i < 5; ++i) {
+            assertSame(first, queue.submit("2-6-time", request("minmagnitude=2")));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (results.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        awaitIdle();
+        assertEquals(1, server.getRequests());
+        assertEquals(1, results.get());
+    }
+
+    @Test
+    public void newerQuery_makesOlderResultStale() throws Exception {
+        CountDownLatch submitted = new CountDownLatch(1);
+        FetchTask older = queue.submit("2-6-time", new FetchQueue.Job() {
+            @Override
+            public void run(FetchTask task) {
+                try {
+                    // still running when the newer query comes in
+                    submitted.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        FetchTask newer = queue.submit("3-6-time", new FetchQueue.Job() {
+            @Override
+            public void run(FetchTask task) {
+                results.incrementAndGet();
+            }
+        });
+        submitted.countDown();
+        assertFalse(queue.isCurrent(older));
+        assertTrue(older.isCancelled());
+        assertTrue(queue.isCurrent(newer));
+        assertTrue(newer.getGeneration() > older.getGeneration());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (results.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        awaitIdle();
+        assertEquals(1, results.get());
+    }
+
+    @Test
+    public void cancel_runsTheCancelListeners() {
+        FetchTask task = new FetchTask("2-6-time", 1, null);
+        AtomicInteger runs = new AtomicInteger();
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        Runnable removed = new Runnable() {
+            @Override
+            public void run() {
+                fail("removed listeners are not run");
+            }
+        };
+        task.addCancelListener(listener);
+        task.addCancelListener(removed);
+        task.removeCancelListener(removed);
+        task.cancel();
+        assertEquals(1, runs.get());
+        // added after the task was cancelled, it runs right away
+        task.addCancelListener(listener);
+        assertEquals(2, runs.get());
+        task.cancel();
+        assertEquals(2, runs.get());
+    }
+}
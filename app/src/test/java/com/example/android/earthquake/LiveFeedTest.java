@@ -0,0 +1,107 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LiveFeed}, merging the events of a feed into the list shown and
+ * the schedule of the polls.
+ */
+public class LiveFeedTest {
+
+    private static final long NOW = 1600000000000L;
+    private static final long START = NOW - EarthquakeSync.WINDOW;
+
+    private static EarthquakeTable shown() {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add("a", 4.5, "Place A", NOW - 3000, NOW - 3000, "url");
+        earthquakes.add("b", 3.2, "Place B", NOW - 5000, NOW - 5000, "url");
+        earthquakes.add("c", 2.1, "Place C", NOW - 9000, NOW - 9000, "url");
+        return earthquakes;
+    }
+
+    // the list shown after merging, sorted like the query
+    private static EarthquakeTable list(EarthquakeSet set, String orderBy) {
+        return new EarthquakeIndex(2, 6, set.toTable(), true, 0).query(2, 6, orderBy);
+    }
+
+    @Test
+    public void merge_addsAndRevisesById() {
+        EarthquakeTable feed = new EarthquakeTable();
+        // a new event, a revision of b and an unchanged copy of c
+        feed.add("d", 5.0, "Place D", NOW - 1000, NOW - 1000, "url");
+        feed.add("b", 3.8, "Place B", NOW - 5000, NOW - 500, "url");
+        feed.add("c", 2.1, "Place C", NOW - 9000, NOW - 9000, "url");
+        EarthquakeSet set = new EarthquakeSet(shown());
+        EarthquakeSet.ChangeSet changes = LiveFeed.merge(set, feed, 2, 6, START);
+        assertEquals(1, changes.getAdded().size());
+        assertEquals("d", changes.getAdded().getId(0));
+        assertEquals(1, changes.getUpdated().size());
+        assertEquals("b", changes.getUpdated().getId(0));
+        assertTrue(changes.getRemovedIds().isEmpty());
+        EarthquakeTable merged = list(set, "time");
+        assertEquals(4, merged.size());
+        assertEquals("d", merged.getId(0));
+        assertEquals("a", merged.getId(1));
+        assertEquals("b", merged.getId(2));
+        assertEquals(3.8, merged.getMagnitude(2), 0);
+        assertEquals("c", merged.getId(3));
+        merged = list(set, "magnitude");
+        assertEquals("d", merged.getId(0));
+        assertEquals("c", merged.getId(3));
+    }
+
+    @Test
+    public void merge_dropsEventsOutsideTheRange() {
+        EarthquakeTable feed = new EarthquakeTable();
+        // too small, too old and a revision moving a below the range
+        feed.add("e", 1.0, "Place E", NOW - 1000, NOW - 1000, "url");
+        feed.add("f", 3.0, "Place F", START - 1, START, "url");
+        feed.add("a", 1.9, "Place A", NOW - 3000, NOW - 100, "url");
+        EarthquakeSet set = new EarthquakeSet(shown());
+        EarthquakeSet.ChangeSet changes = LiveFeed.merge(set, feed, 2, 6, START);
+        assertEquals(0, changes.getAdded().size());
+        assertEquals(Arrays.asList("a"), changes.getRemovedIds());
+        EarthquakeTable merged = list(set, "time");
+        assertEquals(2, merged.size());
+        assertEquals("b", merged.getId(0));
+        assertEquals("c", merged.getId(1));
+    }
+
+    @Test
+    public void merge_isEmptyWithoutChanges() {
+        EarthquakeTable feed = new EarthquakeTable();
+        feed.add("a", 4.5, "Place A", NOW - 3000, NOW - 3000, "url");
+        feed.add("e", 1.0, "Place E", NOW - 1000, NOW - 1000, "url");
+        EarthquakeSet set = new EarthquakeSet(shown());
+        assertTrue(LiveFeed.merge(set, feed, 2, 6, START).isEmpty());
+        assertTrue(LiveFeed.merge(set, new EarthquakeTable(), 2, 6, START).isEmpty());
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void polls_backOffUntilSomethingChanges() {
+        LiveFeed liveFeed = new LiveFeed();
+        assertEquals(LiveFeed.DAY_URL, liveFeed.getUrl(NOW));
+        assertEquals(0, liveFeed.getDelay(NOW));
+        liveFeed.polled(NOW, false);
+        assertEquals(2 * LiveFeed.MIN_INTERVAL, liveFeed.getInterval());
+        assertEquals(LiveFeed.HOUR_URL, liveFeed.getUrl(NOW + liveFeed.getInterval()));
+        for (int i = 0; i < 10; ++i) {
+            liveFeed.polled(NOW, false);
+        }
+        assertEquals(LiveFeed.MAX_INTERVAL, liveFeed.getInterval());
+        liveFeed.polled(NOW, true);
+        assertEquals(LiveFeed.MIN_INTERVAL, liveFeed.getInterval());
+        assertEquals(LiveFeed.MIN_INTERVAL - 1000, liveFeed.getDelay(NOW + 1000));
+        liveFeed.failed();
+        assertEquals(2 * LiveFeed.MIN_INTERVAL, liveFeed.getInterval());
+        // after an hour without polls the hour feed may miss events
+        assertEquals(LiveFeed.DAY_URL, liveFeed.getUrl(NOW + 60 * 60 * 1000));
+        liveFeed.reset();
+        assertEquals(LiveFeed.MIN_INTERVAL, liveFeed.getInterval());
+    }
+}
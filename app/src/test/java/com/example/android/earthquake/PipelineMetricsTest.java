@@ -0,0 +1,62 @@
+package com.example.android.earthquake;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PipelineMetrics}.
+ */
+public class PipelineMetricsTest {
+
+    @Before
+    public void setUp() {
+        PipelineMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        PipelineMetrics.setEnabled(false);
+        PipelineMetrics.reset();
+    }
+
+    @Test
+    public void disabled_recordsNothing() throws IOException {
+        PipelineMetrics.setEnabled(false);
+        long start = PipelineMetrics.start();
+        assertEquals(0, start);
+        PipelineMetrics.record(PipelineMetrics.PARSE, start);
+        PipelineMetrics.count(PipelineMetrics.EVENTS_PARSED, 10);
+        InputStream in = new ByteArrayInputStream(new byte[100]);
+        assertSame(in, PipelineMetrics.countBytes(in));
+        assertEquals(0, PipelineMetrics.getCount(PipelineMetrics.PARSE));
+        assertEquals(0, PipelineMetrics.getCounter(PipelineMetrics.EVENTS_PARSED));
+    }
+
+    @Test
+    public void enabled_recordsStagesAndCounters() throws Exception {
+        PipelineMetrics.setEnabled(true);
+        for (int i = 0; i < 10; ++i) {
+            PipelineMetrics.record(PipelineMetrics.BIND, PipelineMetrics.start());
+        }
+        long start = PipelineMetrics.start();
+        Thread.sleep(20);
+        PipelineMetrics.record(PipelineMetrics.REFRESH, start);
+        assertEquals(10, PipelineMetrics.getCount(PipelineMetrics.BIND));
+        assertEquals(1, PipelineMetrics.getCount(PipelineMetrics.REFRESH));
+        // 20ms lie in the bucket up to 2^15 microseconds or a later one
+        assertTrue(PipelineMetrics.getPercentile(PipelineMetrics.REFRESH, 0.5) >= 1 << 15);
+
+        InputStream in = PipelineMetrics.countBytes(new ByteArrayInputStream(new byte[100]));
+        assertEquals(0, in.read());
+        assertEquals(99, in.read(new byte[200], 0, 200));
+        assertEquals(100, PipelineMetrics.getCounter(PipelineMetrics.BYTES_RECEIVED));
+        assertTrue(PipelineMetrics.dump().contains("refresh: count=1"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PlaceIndex}, the rows found through the index are compared against
+ * checking the words of every row.
+ */
+public class PlaceIndexTest {
+
+    private static final String[] PLACES = {"Alaska", "Papua New Guinea", "New Zealand",
+            "Central California", "Puerto Rico", "near the coast of Papua, Indonesia",
+            "Fiji region", "Nevada"};
+
+    private static EarthquakeTable table(int count, long seed) {
+        Random random = new Random(seed);
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        for (int i = 0; i < count; ++i) {
+            String place = random.nextInt(100) + " km N of " + PLACES[random.nextInt(PLACES.length)];
+            earthquakes.add("ev" + i, 3, place, 1600000000000L - i, 1600000000000L, "url");
+        }
+        return earthquakes;
+    }
+
+    // check every row for a word starting with every word of the query
+    private static int[] scan(EarthquakeTable earthquakes, String query) {
+        String[] queryWords = PlaceIndex.words(query);
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < earthquakes.size(); ++row) {
+            String[] words = PlaceIndex.words(earthquakes.getLocation(row));
+            boolean matches = true;
+            for (String queryWord : queryWords) {
+                boolean found = false;
+                for (String word : words) {
+                    found |= word.startsWith(queryWord);
+                }
+                matches &= found;
+            }
+            if (matches) {
+                rows.add(row);
+            }
+        }
+        int[] result = new int[rows.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = rows.get(i);
+        }
+        return result;
+    }
+
+    private static final String[] QUERIES = {"alaska", "new", "pap n", "NEW z", "p", "co pa",
+            "guinea papua", "fiji region", "zzz", "", "  ", "ne, ne"};
+
+    @Test
+    public void search_matchesScanningEveryRow() {
+        EarthquakeTable earthquakes = table(2000, 3);
+        PlaceIndex index = new PlaceIndex(earthquakes);
+        for (String query : QUERIES) {
+            assertArrayEquals(query, scan(earthquakes, query), index.search(query));
+        }
+        assertEquals(0, index.search("zzz").length);
+        assertEquals(earthquakes.size(), index.search("").length);
+    }
+
+    @Test
+    public void add_indexesOnlyNewRows() {
+        EarthquakeTable all = table(1000, 4);
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        PlaceIndex index = new PlaceIndex(earthquakes.snapshot());
+        // batches like the ones of a streamed response
+        for (int row = 0; row < all.size(); ++row) {
+            earthquakes.add(all, row);
+            if (row % 250 == 249) {
+                EarthquakeTable snapshot = earthquakes.snapshot();
+                assertTrue(index.isContinuedBy(snapshot));
+                index.add(snapshot);
+            }
+        }
+        PlaceIndex built = new PlaceIndex(all);
+        for (String query : QUERIES) {
+            assertArrayEquals(query, built.search(query), index.search(query));
+        }
+        assertFalse(index.isContinuedBy(table(10, 5)));
+    }
+
+    @Test
+    public void accentsAndCase_areFolded() {
+        assertEquals(Arrays.asList("oita", "japan"),
+                Arrays.asList(PlaceIndex.words("\u014Cita, JAPAN")));
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        earthquakes.add("a", 3, "5 km S of \u014Cita, Japan", 1, 1, "url");
+        earthquakes.add("b", 3, "10 km W of Z\u00FCrich, Switzerland", 1, 1, "url");
+        PlaceIndex index = new PlaceIndex(earthquakes);
+        assertArrayEquals(new int[]{0}, index.search("oita"));
+        assertArrayEquals(new int[]{0}, index.search("\u00D5IT"));
+        assertArrayEquals(new int[]{1}, index.search("zur swi"));
+        EarthquakeTable matches = index.filter("zurich");
+        assertEquals(1, matches.size());
+        assertEquals("b", matches.getId(0));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.earthquake;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the retries and the size limit of the requests in {@link QueryUtils},
+ * against a {@link LocalServer} which answers with the faults it is given.
+ * The count request is used since its plain text answer needs no JSON parsing. They run with
+ * Robolectric since the requests log their failures.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QueryUtilsTest {
+
+    private LocalServer server;
+    // answers for the next requests, the last one is repeated
+    private final ConcurrentLinkedQueue<LocalServer.Response> answers =
+            new ConcurrentLinkedQueue<>();
+
+    private static LocalServer.Response status(int code) {
+        return LocalServer.Response.status(code);
+    }
+
+    private static LocalServer.Response count(int count) {
+        return LocalServer.Response.ok(count + "\n");
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public LocalServer.Response answer(LocalServer.Request request) {
+                return answers.size() > 1 ? answers.poll() : answers.peek();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    private String url() {
+        return server.url("/count?minmagnitude=2");
+    }
+
+    private static FetchTask task() {
+        return new FetchTask("count", 1, null);
+    }
+
+    @Test
+    public void serverErrors_areRetriedWithBackOff() {
+        answers.addAll(Arrays.asList(status(503), status(500), count(42)));
+        FetchTask task = task();
+        long start = System.currentTimeMillis();
+        assertEquals(42, QueryUtils.fetchEarthquakeCount(url(), task));
+        assertEquals(3, server.getRequests());
+        assertEquals(FetchTask.FAILURE_NONE, task.getFailure());
+        // one and then two seconds between the attempts
+        assertTrue(System.currentTimeMillis() - start >= 3000);
+    }
+
+    @Test
+    public void serverErrors_giveUpAfterThreeAttempts() {
+        answers.add(status(502));
+        FetchTask task = task();
+        assertEquals(-1, QueryUtils.fetchEarthquakeCount(url(), task));
+        assertEquals(3, server.getRequests());
+        assertEquals(FetchTask.FAILURE_SERVER, task.getFailure());
+    }
+
+    @Test
+    public void clientErrors_areNotRetried() {
+        answers.add(status(400));
+        FetchTask task = task();
+        assertEquals(-1, QueryUtils.fetchEarthquakeCount(url(), task));
+        assertEquals(1, server.getRequests());
+        assertEquals(FetchTask.FAILURE_SERVER, task.getFailure());
+    }
+
+    @Test
+    public void cancelling_stopsWaitingForTheNextAttempt() throws Exception {
+        answers.add(status(503));
+        FetchTask task = task();
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.cancel();
+            }
+        });
+        canceller.start();
+        long start = System.currentTimeMillis();
+        assertEquals(-1, QueryUtils.fetchEarthquakeCount(url(), task));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1, server.getRequests());
+        canceller.join();
+    }
+
+    @Test
+    public void announcedLargeResponse_isNotRead() {
+        answers.add(LocalServer.Response.ok("1")
+                .header("Content-Length", String.valueOf(QueryUtils.MAX_RESPONSE_BYTES + 1)));
+        FetchTask task = task();
+        assertEquals(-1, QueryUtils.fetchEarthquakeCount(url(), task));
+        assertEquals(FetchTask.FAILURE_TOO_LARGE, task.getFailure());
+    }
+
+    @Test
+    public void largeResponseWithoutLength_isCutOff() {
+        // empty lines, so reading them builds no large string
+        byte[] body = new byte[(int) QueryUtils.MAX_RESPONSE_BYTES + 2];
+        Arrays.fill(body, (byte) '\n');
+        body[body.length - 2] = '1';
+        answers.add(new LocalServer.Response(200, "OK", body).withoutLength());
+        FetchTask task = task();
+        assertEquals(-1, QueryUtils.fetchEarthquakeCount(url(), task));
+        assertEquals(FetchTask.FAILURE_TOO_LARGE, task.getFailure());
+    }
+}
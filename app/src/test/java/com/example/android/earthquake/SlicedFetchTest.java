@@ -0,0 +1,141 @@
+package com.example.android.earthquake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the k-way merge of {@link SlicedFetch}, merging the sorted slices of a
+ * range gives the same list as sorting the whole range and cutting it off at the limit.
+ */
+public class SlicedFetchTest {
+
+    private static final String[] ORDERS = {"time", "time-asc", "magnitude", "magnitude-asc"};
+
+    private static Comparator<double[]> comparator(String orderBy) {
+        switch (orderBy) {
+            case "time-asc":
+                return (a, b) -> Double.compare(a[1], b[1]);
+            case "magnitude":
+                return (a, b) -> Double.compare(b[0], a[0]);
+            case "magnitude-asc":
+                return (a, b) -> Double.compare(a[0], b[0]);
+            default:
+                return (a, b) -> Double.compare(b[1], a[1]);
+        }
+    }
+
+    private static EarthquakeTable table(List<double[]> events) {
+        EarthquakeTable earthquakes = new EarthquakeTable();
+        for (double[] event : events) {
+            long time = (long) event[1];
+            earthquakes.add("ev" + time, event[0], "Place", time, time, "url");
+        }
+        return earthquakes;
+    }
+
+    @Test
+    public void merge_matchesSortingTheWholeRange() {
+        Random random = new Random(3);
+        long start = 1600000000000L;
+        long end = start + 30L * 24 * 60 * 60 * 1000;
+        int slices = 4;
+        long[] bounds = SlicedFetch.sliceBounds(start, end, slices, 1);
+        // distinct times, so the order of the rows is fixed
+        List<double[]> events = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            double magnitude = random.nextInt(80) / 10.0;
+            events.add(new double[]{magnitude, start + (end - start) / 5000 * i + random.nextInt(100)});
+        }
+        for (String orderBy : ORDERS) {
+            Comparator<double[]> comparator = comparator(orderBy);
+            EarthquakeTable[] tables = new EarthquakeTable[slices];
+            for (int slice = 0; slice < slices; ++slice) {
+                List<double[]> sliceEvents = new ArrayList<>();
+                for (double[] event : events) {
+                    if (event[1] >= bounds[slice] && event[1] < bounds[slice + 1]) {
+                        sliceEvents.add(event);
+                    }
+                }
+                Collections.sort(sliceEvents, comparator);
+                tables[slice] = table(sliceEvents);
+            }
+            List<double[]> sorted = new ArrayList<>(events);
+            Collections.sort(sorted, comparator);
+            for (int limit : new int[]{100, 3000, 10000}) {
+                EarthquakeTable merged = SlicedFetch.merge(tables, orderBy, limit);
+                EarthquakeTable expected = table(sorted.subList(0, Math.min(limit, sorted.size())));
+                assertEquals(orderBy, expected.size(), merged.size());
+                for (int row = 0; row < expected.size(); ++row) {
+                    if (orderBy.startsWith("magnitude")) {
+                        // rows of the same magnitude may come in another order
+                        assertEquals(orderBy, expected.getMagnitude(row), merged.getMagnitude(row), 0);
+                    }
+                    else {
+                        assertEquals(orderBy, expected.getId(row), merged.getId(row));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sliceBounds_coverTheRange() {
+        long[] bounds = SlicedFetch.sliceBounds(1000, 1999, 3, 1);
+        assertEquals(4, bounds.length);
+        assertEquals(1000, bounds[0]);
+        // the end time is in the range
+        assertEquals(2000, bounds[3]);
+        for (int slice = 0; slice < 3; ++slice) {
+            assertTrue(bounds[slice] < bounds[slice + 1]);
+        }
+        // too short to hold a step per slice, so not rounded
+        assertArrayEquals(bounds, SlicedFetch.sliceBounds(1000, 1999, 3, 1000));
+        assertEquals(0, SlicedFetch.merge(new EarthquakeTable[0], "time", 10).size());
+    }
+
+    @Test
+    public void sliceBounds_areRoundedToDays() {
+        long day = EarthquakeSync.WINDOW_STEP;
+        long now = 1600000000000L;
+        long start = now - 100 * day;
+        long[] bounds = SlicedFetch.sliceBounds(start, now, 4, day);
+        assertEquals(start, bounds[0]);
+        for (int slice = 1; slice <= 4; ++slice) {
+            assertEquals(0, bounds[slice] % day);
+            assertTrue(bounds[slice - 1] < bounds[slice]);
+        }
+        assertTrue(bounds[4] > now);
+        // the same all day, so the urls of the slices can be revalidated
+        assertArrayEquals(bounds, SlicedFetch.sliceBounds(start, now + 60000, 4, day));
+    }
+
+    @Test
+    public void isWide_onlyForWideOrOldRanges() {
+        long day = EarthquakeSync.WINDOW_STEP;
+        long now = 1600000000000L;
+        assertFalse(SlicedFetch.isWide(EarthquakeSync.windowStart(now), now, now));
+        assertTrue(SlicedFetch.isWide(now - 365 * day, now, now));
+        // a year ago, searched in the archive
+        assertTrue(SlicedFetch.isWide(now - 375 * day, now - 365 * day, now));
+    }
+
+    @Test
+    public void cancel_cancelsForks() {
+        FetchTask task = new FetchTask("key", 1, null);
+        FetchTask first = task.fork();
+        FetchTask second = task.fork();
+        assertFalse(first.isCancelled());
+        task.cancel();
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        // a fork of a cancelled task starts cancelled
+        assertTrue(task.fork().isCancelled());
+    }
+}